@@ -3,6 +3,7 @@ package app;
 import controller.LibraryController;
 import javax.swing.*;
 import model.Library;
+import util.ConfigLoader;
 import view.LoginView;
 
 /**
@@ -21,6 +22,14 @@ public class App {
             // 1. Initialize the Model
             // The model loads its own data from the specified file.
             Library libraryModel = new Library("books.dat");
+            // Mutations are written in the background; make sure the last ones reach disk on exit.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                libraryModel.flush();
+                if (Boolean.parseBoolean(ConfigLoader.getProperty("metrics.log"))) {
+                    System.out.println("Persistence: " + libraryModel.getPersistenceStats());
+                    System.out.println("Loan persistence: " + libraryModel.getLoanPersistenceStats());
+                }
+            }, "library-flush"));
 
             // 2. Initialize the first View (Login Screen)
             LoginView loginView = new LoginView();
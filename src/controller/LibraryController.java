@@ -1,14 +1,15 @@
 package controller;
 
-import java.awt.Component;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -27,11 +28,15 @@ public class LibraryController {
     private MainView mainView;
     private final LoginView loginView;
     private final Map<String, String> users;
+    private final SearchSession inventorySearch;
+    private final SearchSession gallerySearch;
 
     public LibraryController(Library library, LoginView loginView) {
         this.library = library;
         this.loginView = loginView;
         this.users = new HashMap<>();
+        this.inventorySearch = library.newSearchSession();
+        this.gallerySearch = library.newSearchSession();
         
         // Load users from the config file
         users.put(ConfigLoader.getProperty("user.admin.username"), ConfigLoader.getProperty("user.admin.password"));
@@ -44,12 +49,18 @@ public class LibraryController {
         String username = loginView.getUsername();
         String password = loginView.getPassword();
         if (users.containsKey(username) && users.get(username).equals(password)) {
+            long loginStarted = System.nanoTime();
             loginView.closeView();
             SwingUtilities.invokeLater(() -> {
                 mainView = new MainView(username);
                 attachMainViewListeners();
+                if (Boolean.parseBoolean(ConfigLoader.getProperty("metrics.log"))) {
+                    mainView.setFirstFrameListener(() -> {
+                        long millis = (System.nanoTime() - loginStarted) / 1_000_000;
+                        System.out.println("Login to first interactive frame: " + millis + " ms");
+                    });
+                }
                 mainView.showView();
-                refreshAllData();
             });
         } else {
             loginView.showErrorMessage("Invalid username or password.");
@@ -57,19 +68,48 @@ public class LibraryController {
     }
 
     private void attachMainViewListeners() {
-        // ... (Listeners remain the same)
         mainView.getSettingsButton().addActionListener(this::handleSettings);
-        mainView.getAddBookPanel().getAddButton().addActionListener(this::handleAddBook);
-        mainView.getInventoryPanel().getEditMenuItem().addActionListener(this::handleEditBookFromInventory);
-        mainView.getGalleryPanel().getEditMenuItem().addActionListener(this::handleEditBookFromGallery);
-        mainView.getInventoryPanel().getDeleteButton().addActionListener(this::handleDeleteBook);
-        mainView.getInventoryPanel().getExportButton().addActionListener(this::handleExport);
-        mainView.getLendingPanel().getLendButton().addActionListener(this::handleLendBook);
-        mainView.getLendingPanel().getReturnButton().addActionListener(this::handleReturnBook);
-        addSearchListener(mainView.getInventoryPanel().getSearchField(), this::filterInventory);
-        addSearchListener(mainView.getGalleryPanel().getSearchField(), this::filterGallery);
+        mainView.setPanelCreatedListener(this::attachPanelListeners);
+        mainView.setFilterRefresher(card -> {
+            if (card.equals("Inventory")) filterInventory();
+            else filterGallery();
+        });
+        mainView.setDataSources(library::getAllBooks, library::getBooksOnLoan, library::countByType,
+                () -> library.getLoanSummary(LocalDate.now()));
     }
-    
+
+    /**
+     * Wires up a content panel when MainView builds it on first navigation.
+     * @param card The card name of the panel that was just created.
+     */
+    private void attachPanelListeners(String card) {
+        switch (card) {
+            case "Inventory" -> {
+                mainView.getInventoryPanel().getEditMenuItem().addActionListener(this::handleEditBookFromInventory);
+                mainView.getInventoryPanel().getDeleteButton().addActionListener(this::handleDeleteBook);
+                mainView.getInventoryPanel().getExportButton().addActionListener(this::handleExport);
+                mainView.getInventoryPanel().getImportButton().addActionListener(this::handleImport);
+                mainView.getInventoryPanel().getImportCoversButton().addActionListener(this::handleImportCovers);
+                addSearchListener(mainView.getInventoryPanel().getSearchField(), this::filterInventory);
+                addSuggestionListener(mainView.getInventoryPanel().getSuggestionLabel(), mainView.getInventoryPanel().getSearchField());
+                mainView.getInventoryPanel().getFacetBar().setFilterListener(this::filterInventory);
+            }
+            case "Gallery" -> {
+                mainView.getGalleryPanel().getEditMenuItem().addActionListener(this::handleEditBookFromGallery);
+                addSearchListener(mainView.getGalleryPanel().getSearchField(), this::filterGallery);
+                addSuggestionListener(mainView.getGalleryPanel().getSuggestionLabel(), mainView.getGalleryPanel().getSearchField());
+                mainView.getGalleryPanel().getFacetBar().setFilterListener(this::filterGallery);
+            }
+            case "Lending" -> {
+                mainView.getLendingPanel().getLendButton().addActionListener(this::handleLendBook);
+                mainView.getLendingPanel().getReturnButton().addActionListener(this::handleReturnBook);
+                addSearchListener(mainView.getLendingPanel().getBorrowerField(), this::showPatron);
+            }
+            case "Add Book" -> mainView.getAddBookPanel().getAddButton().addActionListener(this::handleAddBook);
+            default -> { } // Dashboard and Reporting are read-only
+        }
+    }
+
     private void handleSettings(ActionEvent e) {
         String oldUsername = mainView.getCurrentUsername();
         SettingsDialog dialog = new SettingsDialog(mainView, oldUsername);
@@ -127,10 +167,7 @@ public class LibraryController {
     }
 
     private void refreshAllData() {
-        java.util.List<Book> allBooks = library.getAllBooks();
-        Map<String, Integer> bookStats = allBooks.stream()
-            .collect(Collectors.groupingBy(Book::getType, Collectors.summingInt(b -> 1)));
-        mainView.refreshAllViews(allBooks, bookStats);
+        mainView.refreshAllViews();
     }
     
     // ... (All other handler methods remain the same)
@@ -161,13 +198,7 @@ public class LibraryController {
     }
 
     private void handleEditBookFromGallery(ActionEvent e) {
-        JMenuItem menuItem = (JMenuItem) e.getSource();
-        JPopupMenu popupMenu = (JPopupMenu) menuItem.getParent();
-        Component invoker = popupMenu.getInvoker();
-        if (invoker instanceof JPanel) {
-            String isbn = invoker.getName();
-            openEditDialog(isbn);
-        }
+        openEditDialog(mainView.getGalleryPanel().getSelectedBookIsbn());
     }
 
     private void openEditDialog(String isbn) {
@@ -196,6 +227,7 @@ public class LibraryController {
         int choice = JOptionPane.showConfirmDialog(mainView, "Delete this book?", "Confirm Deletion", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
         if (choice == JOptionPane.YES_OPTION) {
             library.removeBook(isbn);
+            ImageUtils.deleteBookImage(isbn);
             refreshAllData();
         }
     }
@@ -207,30 +239,35 @@ public class LibraryController {
             JOptionPane.showMessageDialog(mainView, "Please select a book and enter a borrower's name.", "Lending Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        bookToLend.setBorrower(borrower);
-        bookToLend.setLoanDate(LocalDate.now());
-        bookToLend.setDueDate(LocalDate.now().plusWeeks(2));
-        bookToLend.setOnLoan(true);
-        library.updateBook(bookToLend);
+        try {
+            library.lendBook(bookToLend.getIsbn(), borrower, LocalDate.now(), LocalDate.now().plusWeeks(2));
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(mainView, ex.getMessage(), "Lending Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         mainView.getLendingPanel().clearLendForm();
         refreshAllData();
     }
 
+    /** Shows what the borrower being entered already has out, from the patron's own loans. */
+    private void showPatron() {
+        LendingPanel panel = mainView.getLendingPanel();
+        Patron patron = library.findPatron(panel.getBorrowerName());
+        panel.showPatron(patron, patron != null ? library.getBooksOnLoanTo(patron) : java.util.List.of(), library.getMaxLoansPerPatron());
+    }
+
     private void handleReturnBook(ActionEvent e) {
         String isbn = mainView.getLendingPanel().getSelectedLoanIsbn();
         if (isbn == null) {
             JOptionPane.showMessageDialog(mainView, "Please select a book to return.", "Return Error", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        Book bookToReturn = library.findBookByIsbn(isbn);
-        if (bookToReturn != null) {
-            bookToReturn.setOnLoan(false);
-            bookToReturn.setBorrower(null);
-            bookToReturn.setLoanDate(null);
-            bookToReturn.setDueDate(null);
-            library.updateBook(bookToReturn);
-            refreshAllData();
+        try {
+            library.returnBook(isbn);
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(mainView, ex.getMessage(), "Return Error", JOptionPane.WARNING_MESSAGE);
         }
+        refreshAllData();
     }
     
     private void handleExport(ActionEvent e) {
@@ -261,6 +298,164 @@ public class LibraryController {
         }
     }
 
+    private void handleImport(ActionEvent e) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Choose a file to import");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("CSV or JSON Lines Files", "csv", "jsonl", "ndjson", "json"));
+        if (fileChooser.showOpenDialog(mainView) != JFileChooser.APPROVE_OPTION) return;
+        File source = fileChooser.getSelectedFile();
+        JButton importButton = mainView.getInventoryPanel().getImportButton();
+        importButton.setEnabled(false);
+
+        ProgressMonitor monitor = new ProgressMonitor(mainView, "Importing " + source.getName(), "Reading...", 0, 1000);
+        monitor.setMillisToDecideToPopup(200);
+        SwingWorker<BookImporter.ImportResult, BookImporter.Progress> worker = new SwingWorker<>() {
+            @Override
+            protected BookImporter.ImportResult doInBackground() throws IOException {
+                BookImporter.ImportResult result = BookImporter.read(source.toPath(), progress -> {
+                    // Nothing has been added yet, so cancelling here leaves the library untouched.
+                    if (monitor.isCanceled()) throw new CancellationException();
+                    publish(progress);
+                });
+                result.rejectExisting(library.addBooks(result.getBooks()));
+                return result;
+            }
+
+            @Override
+            protected void process(java.util.List<BookImporter.Progress> chunks) {
+                BookImporter.Progress latest = chunks.get(chunks.size() - 1);
+                if (latest.totalBytes() > 0) {
+                    monitor.setProgress((int) (latest.bytesRead() * 1000 / latest.totalBytes()));
+                }
+                monitor.setNote(String.format("%,d rows read", latest.rows()));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                importButton.setEnabled(true);
+                try {
+                    showImportSummary(source, get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    if (ex.getCause() instanceof CancellationException) return;
+                    JOptionPane.showMessageDialog(mainView, "Error importing data: " + ex.getCause().getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
+                }
+                refreshAllData();
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * Reports how many rows were imported. The full list of rejected rows is written
+     * next to the source file, and the first few are shown in the dialog.
+     */
+    private void showImportSummary(File source, BookImporter.ImportResult result) {
+        var rejections = result.getRejections();
+        StringBuilder message = new StringBuilder(String.format("Imported %,d of %,d rows.", result.getBooks().size(), result.getRowCount()));
+        if (!rejections.isEmpty()) {
+            message.append(String.format("%n%,d rows were rejected:%n", rejections.size()));
+            rejections.stream().limit(10).forEach(r -> message.append("  Line ").append(r.line()).append(": ").append(r.reason()).append('\n'));
+            if (rejections.size() > 10) message.append("  ...\n");
+            File report = new File(source.getAbsolutePath() + ".rejected.txt");
+            try (FileWriter writer = new FileWriter(report)) {
+                for (BookImporter.Rejection r : rejections) {
+                    writer.write("Line " + r.line() + ": " + r.reason() + "\n");
+                }
+                message.append("The full list was saved to ").append(report.getName()).append('.');
+            } catch (IOException ex) {
+                System.err.println("Error writing import report: " + ex.getMessage());
+            }
+        }
+        JOptionPane.showMessageDialog(mainView, message.toString(), "Import Finished",
+                rejections.isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+    }
+
+    private void handleImportCovers(ActionEvent e) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Choose a folder, zip archive or mapping file of covers");
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Cover folders, zip archives or mapping files", "zip", "csv", "txt"));
+        if (fileChooser.showOpenDialog(mainView) != JFileChooser.APPROVE_OPTION) return;
+        File source = fileChooser.getSelectedFile();
+        JButton importCoversButton = mainView.getInventoryPanel().getImportCoversButton();
+        importCoversButton.setEnabled(false);
+
+        ProgressMonitor monitor = new ProgressMonitor(mainView, "Importing covers from " + source.getName(), "Reading...", 0, 1000);
+        monitor.setMillisToDecideToPopup(200);
+        SwingWorker<CoverImporter.ImportResult, CoverImporter.Progress> worker = new SwingWorker<>() {
+            @Override
+            protected CoverImporter.ImportResult doInBackground() throws IOException {
+                java.util.Set<String> catalog = new java.util.HashSet<>();
+                for (Book book : library.getAllBooks()) catalog.add(book.getIsbn());
+                return CoverImporter.run(source.toPath(), catalog, progress -> {
+                    // Covers stored so far are kept; the rest of the source is skipped.
+                    if (monitor.isCanceled()) throw new CancellationException();
+                    publish(progress);
+                });
+            }
+
+            @Override
+            protected void process(java.util.List<CoverImporter.Progress> chunks) {
+                CoverImporter.Progress latest = chunks.get(chunks.size() - 1);
+                if (latest.total() > 0) monitor.setProgress((int) (latest.done() * 1000 / latest.total()));
+                monitor.setNote(String.format("%,d of %,d images", latest.done(), latest.total()));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                importCoversButton.setEnabled(true);
+                try {
+                    showCoverImportSummary(source, get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    if (!(ex.getCause() instanceof CancellationException)) {
+                        JOptionPane.showMessageDialog(mainView, "Error importing covers: " + ex.getCause().getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+                refreshAllData();
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * Reports how many covers were stored. The images that failed and the books still
+     * without a cover are written to a report next to the source.
+     */
+    private void showCoverImportSummary(File source, CoverImporter.ImportResult result) {
+        var failures = result.getFailures();
+        var missing = result.getMissing();
+        StringBuilder message = new StringBuilder(String.format("Stored %,d covers.", result.getStoredCount()));
+        if (!failures.isEmpty()) {
+            message.append(String.format("%n%,d images were not stored:%n", failures.size()));
+            failures.stream().limit(10).forEach(f -> message.append("  ").append(f.source()).append(": ").append(f.reason()).append('\n'));
+            if (failures.size() > 10) message.append("  ...\n");
+        }
+        if (!missing.isEmpty()) message.append(String.format("%n%,d books still have no cover.%n", missing.size()));
+        if (!failures.isEmpty() || !missing.isEmpty()) {
+            File report = new File(source.getAbsolutePath() + ".covers.txt");
+            try (FileWriter writer = new FileWriter(report)) {
+                for (CoverImporter.Failure f : failures) {
+                    writer.write(f.source() + ": " + f.reason() + "\n");
+                }
+                if (!missing.isEmpty()) writer.write("\nBooks without a cover:\n");
+                for (String isbn : missing) {
+                    writer.write(isbn + "\n");
+                }
+                message.append("The full report was saved to ").append(report.getName()).append('.');
+            } catch (IOException ex) {
+                System.err.println("Error writing cover import report: " + ex.getMessage());
+            }
+        }
+        JOptionPane.showMessageDialog(mainView, message.toString(), "Cover Import Finished",
+                failures.isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+    }
+
     private void addSearchListener(JTextField searchField, Runnable updateAction) {
         searchField.getDocument().addDocumentListener(new DocumentListener() {
             public void insertUpdate(DocumentEvent e) { updateAction.run(); }
@@ -269,13 +464,50 @@ public class LibraryController {
         });
     }
 
+    /** Clicking a "Did you mean" link puts the suggestion into its search field. */
+    private void addSuggestionListener(JLabel suggestionLabel, JTextField searchField) {
+        suggestionLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Object suggestion = suggestionLabel.getClientProperty("suggestion");
+                if (suggestion != null) searchField.setText((String) suggestion);
+            }
+        });
+    }
+
     private void filterInventory() {
-        String keyword = mainView.getInventoryPanel().getSearchField().getText();
-        mainView.getInventoryPanel().refreshBookTable(library.searchBooks(keyword));
+        InventoryPanel panel = mainView.getInventoryPanel();
+        java.util.List<Book> matches = search(inventorySearch, panel.getSearchField().getText(), panel.getSuggestionLabel());
+        FacetResult result = library.filterFacets(matches, panel.getFacetBar().getFilter());
+        panel.refreshBookTable(result.books());
+        panel.getFacetBar().showCounts(result.counts());
     }
 
     private void filterGallery() {
-        String keyword = mainView.getGalleryPanel().getSearchField().getText();
-        mainView.getGalleryPanel().updateGallery(library.searchBooks(keyword));
+        GalleryPanel panel = mainView.getGalleryPanel();
+        java.util.List<Book> matches = search(gallerySearch, panel.getSearchField().getText(), panel.getSuggestionLabel());
+        FacetResult result = library.filterFacets(matches, panel.getFacetBar().getFilter());
+        panel.updateGallery(result.books());
+        panel.getFacetBar().showCounts(result.counts());
+    }
+
+    /**
+     * Searches for one of the search fields. When the keyword matches nothing, shows
+     * typo-tolerant matches instead and offers a corrected keyword.
+     * @return The matches, or null for a blank keyword, which matches the whole catalog.
+     */
+    private java.util.List<Book> search(SearchSession session, String keyword, JLabel suggestionLabel) {
+        if (keyword.isBlank()) {
+            UIFactory.showSuggestion(suggestionLabel, null);
+            return null;
+        }
+        java.util.List<Book> results = session.search(keyword);
+        String suggestion = null;
+        if (results.isEmpty()) {
+            results = library.searchFuzzy(keyword);
+            suggestion = library.suggestQuery(keyword);
+        }
+        UIFactory.showSuggestion(suggestionLabel, suggestion);
+        return results;
     }
 }
@@ -0,0 +1,23 @@
+package model;
+
+/**
+ * Criteria for {@link Library#filterBooks}. A null criterion matches every book.
+ * @param text Text the title, author or ISBN must contain, ignoring case.
+ * @param type The book type, as returned by {@link Book#getType()}.
+ * @param minYear The earliest publication year, inclusive.
+ * @param maxYear The latest publication year, inclusive.
+ * @param onLoan Whether the book must be on loan (true) or available (false).
+ */
+public record BookFilter(String text, String type, Integer minYear, Integer maxYear, Boolean onLoan) {
+
+    /** Matches every book. */
+    public static final BookFilter ALL = new BookFilter(null, null, null, null, null);
+
+    /**
+     * @param text Text the title, author or ISBN must contain, ignoring case.
+     * @return A filter on text alone.
+     */
+    public static BookFilter containing(String text) {
+        return new BookFilter(text, null, null, null, null);
+    }
+}
@@ -0,0 +1,456 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Reads books in bulk from a CSV or JSON-lines file.
+ *
+ * The file is streamed in chunks: one thread splits it into records, then each chunk
+ * is parsed, validated and de-duplicated in parallel before the next one is read, so
+ * memory holds one chunk of raw text plus the accepted books. The first occurrence of
+ * an ISBN wins; later rows with the same ISBN are rejected.
+ *
+ * Columns (CSV header) or keys (JSON) are matched case-insensitively:
+ * isbn, title, author, year, type and details. A CSV written by "Export to CSV"
+ * imports as is.
+ */
+public final class BookImporter {
+
+    /** The supported input formats. */
+    public enum Format {
+        CSV, JSON_LINES;
+
+        /**
+         * Picks the format from the file extension (.jsonl, .ndjson and .json are JSON lines).
+         * @param file The file to import.
+         * @return The format to read it with.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json") ? JSON_LINES : CSV;
+        }
+    }
+
+    /** A row that was not imported. Line numbers are 1-based. */
+    public record Rejection(long line, String reason) {}
+
+    /** How far the import has got. */
+    public record Progress(long bytesRead, long totalBytes, long rows) {}
+
+    private static final int CHUNK_ROWS = 8192;
+
+    private BookImporter() {}
+
+    /**
+     * Reads, validates and de-duplicates every row of a file.
+     * @param file The CSV or JSON-lines file.
+     * @param progress Called after each chunk; may be null.
+     * @return The accepted books in file order and the rejected rows.
+     * @throws IOException if the file can't be read or has no usable header.
+     */
+    public static ImportResult read(Path file, Consumer<Progress> progress) throws IOException {
+        Format format = Format.of(file);
+        long totalBytes = Files.size(file);
+        ImportResult result = new ImportResult();
+        Map<String, Long> firstLineByIsbn = new ConcurrentHashMap<>();
+
+        try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(file));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8), 1 << 16)) {
+            RecordSplitter splitter = new RecordSplitter(reader, format);
+            Map<String, Integer> columns = null;
+            if (format == Format.CSV) {
+                RawRecord header = splitter.next();
+                if (header == null) return result;
+                columns = headerColumns(parseCsv(stripBom(header.text())));
+            }
+
+            List<RawRecord> chunk = new ArrayList<>(CHUNK_ROWS);
+            boolean more = true;
+            while (more) {
+                chunk.clear();
+                RawRecord record;
+                while (chunk.size() < CHUNK_ROWS && (record = splitter.next()) != null) {
+                    if (!record.text().isBlank()) chunk.add(record);
+                }
+                more = chunk.size() == CHUNK_ROWS;
+                processChunk(chunk, format, columns, firstLineByIsbn, result);
+                if (progress != null) progress.accept(new Progress(counter.count, totalBytes, result.rows));
+            }
+        }
+        return result;
+    }
+
+    private static void processChunk(List<RawRecord> chunk, Format format, Map<String, Integer> columns,
+                                     Map<String, Long> firstLineByIsbn, ImportResult result) {
+        // Parse, validate and claim ISBNs in parallel; the earliest line keeps an ISBN.
+        List<ParsedRow> rows = chunk.parallelStream()
+                .map(record -> parseRow(record, format, columns))
+                .toList();
+        rows.parallelStream()
+                .filter(row -> row.book != null)
+                .forEach(row -> firstLineByIsbn.merge(row.book.getIsbn(), row.line, Math::min));
+        for (ParsedRow row : rows) {
+            result.rows++;
+            if (row.book == null) {
+                result.rejections.add(new Rejection(row.line, row.error));
+                continue;
+            }
+            long firstLine = firstLineByIsbn.get(row.book.getIsbn());
+            if (firstLine != row.line) {
+                result.rejections.add(new Rejection(row.line, "Duplicate ISBN " + row.book.getIsbn() + " (first seen on line " + firstLine + ")"));
+            } else {
+                result.books.add(row.book);
+                result.lines.put(row.book, row.line);
+            }
+        }
+    }
+
+    private static ParsedRow parseRow(RawRecord record, Format format, Map<String, Integer> columns) {
+        try {
+            Map<String, String> fields;
+            if (format == Format.CSV) {
+                List<String> values = parseCsv(record.text());
+                fields = new HashMap<>();
+                for (Map.Entry<String, Integer> column : columns.entrySet()) {
+                    int index = column.getValue();
+                    fields.put(column.getKey(), index < values.size() ? values.get(index) : null);
+                }
+            } else {
+                fields = parseJsonObject(record.text());
+            }
+            return new ParsedRow(record.line(), toBook(fields), null);
+        } catch (IllegalArgumentException e) {
+            return new ParsedRow(record.line(), null, e.getMessage());
+        }
+    }
+
+    /**
+     * Validates one row and builds the matching book type.
+     * @throws IllegalArgumentException describing the first problem found.
+     */
+    private static Book toBook(Map<String, String> fields) {
+        String isbn = trimmed(fields.get("isbn"));
+        String title = trimmed(fields.get("title"));
+        if (isbn.isEmpty() || title.isEmpty()) {
+            throw new IllegalArgumentException("ISBN and Title are required.");
+        }
+        String author = trimmed(fields.get("author"));
+        String yearText = trimmed(fields.get("year"));
+        int year;
+        try {
+            year = yearText.isEmpty() ? 0 : Integer.parseInt(yearText);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid year: " + yearText);
+        }
+        String type = trimmed(fields.get("type")).toLowerCase(Locale.ROOT).replace("-", "").replace(" ", "");
+        String details = trimmed(fields.get("details"));
+        return switch (type) {
+            case "fiction", "f" -> new FictionBook(isbn, title, author, year, stripLabel(details, "Genre:"));
+            case "nonfiction", "n" -> new NonFictionBook(isbn, title, author, year, stripLabel(details, "Subject:"));
+            case "reference", "r" -> new ReferenceBook(isbn, title, author, year, stripLabel(details, "Category:"));
+            case "" -> throw new IllegalArgumentException("Missing type.");
+            default -> throw new IllegalArgumentException("Unknown type: " + fields.get("type"));
+        };
+    }
+
+    /** Undoes the "Genre: " style prefix that getDetails() adds on export. */
+    private static String stripLabel(String details, String label) {
+        return details.regionMatches(true, 0, label, 0, label.length()) ? details.substring(label.length()).trim() : details;
+    }
+
+    private static String trimmed(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    private static Map<String, Integer> headerColumns(List<String> header) throws IOException {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String key = canonicalKey(header.get(i));
+            if (key != null) columns.putIfAbsent(key, i);
+        }
+        if (!columns.containsKey("isbn") || !columns.containsKey("title") || !columns.containsKey("type")) {
+            throw new IOException("The CSV header must name at least the ISBN, Title and Type columns.");
+        }
+        return columns;
+    }
+
+    /** Maps the accepted spellings of a column or key onto the names used by toBook. */
+    private static String canonicalKey(String name) {
+        String key = name.trim().toLowerCase(Locale.ROOT).replace("_", "").replace(" ", "");
+        return switch (key) {
+            case "isbn" -> "isbn";
+            case "title" -> "title";
+            case "author" -> "author";
+            case "year", "publicationyear" -> "year";
+            case "type" -> "type";
+            case "details", "genre", "subject", "category" -> "details";
+            default -> null;
+        };
+    }
+
+    private static String stripBom(String text) {
+        return !text.isEmpty() && text.charAt(0) == '\uFEFF' ? text.substring(1) : text;
+    }
+
+    /**
+     * Splits one CSV record into fields (RFC 4180: quoted fields may contain
+     * commas, line breaks and doubled quotes).
+     */
+    static List<String> parseCsv(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unterminated quoted field.");
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Parses one flat JSON object. Nested objects and arrays are not part of the
+     * import format and are rejected.
+     */
+    static Map<String, String> parseJsonObject(String text) {
+        JsonCursor cursor = new JsonCursor(text);
+        Map<String, String> fields = new HashMap<>();
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String name = cursor.string();
+                cursor.expect(':');
+                String value = cursor.value();
+                String key = canonicalKey(name);
+                if (key != null) fields.putIfAbsent(key, value);
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        cursor.end();
+        return fields;
+    }
+
+    private static final class JsonCursor {
+        private final String text;
+        private int pos;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) throw new IllegalArgumentException("Malformed JSON: expected '" + c + "' at column " + (pos + 1) + ".");
+        }
+
+        void end() {
+            skipSpace();
+            if (pos != text.length()) throw new IllegalArgumentException("Malformed JSON: unexpected text at column " + (pos + 1) + ".");
+        }
+
+        /** Reads a string, number, boolean or null and returns it as text (null for JSON null). */
+        String value() {
+            skipSpace();
+            if (pos >= text.length()) throw new IllegalArgumentException("Malformed JSON: missing value.");
+            char c = text.charAt(pos);
+            if (c == '"') return string();
+            if (c == '{' || c == '[') throw new IllegalArgumentException("Nested JSON values are not supported.");
+            int start = pos;
+            while (pos < text.length() && ",} \t\r\n".indexOf(text.charAt(pos)) < 0) pos++;
+            String literal = text.substring(start, pos);
+            if (literal.equals("null")) return null;
+            if (literal.isEmpty()) throw new IllegalArgumentException("Malformed JSON: missing value.");
+            return literal;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') return out.toString();
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) break;
+                char escape = text.charAt(pos++);
+                switch (escape) {
+                    case 'n' -> out.append('\n');
+                    case 't' -> out.append('\t');
+                    case 'r' -> out.append('\r');
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) throw new IllegalArgumentException("Malformed JSON: bad \\u escape.");
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Malformed JSON: bad \\u escape.");
+                        }
+                        pos += 4;
+                    }
+                    default -> out.append(escape); // \" \\ \/
+                }
+            }
+            throw new IllegalArgumentException("Malformed JSON: unterminated string.");
+        }
+    }
+
+    /**
+     * Cuts the input into logical records. For CSV a record continues across line
+     * breaks while a quoted field is open; JSON lines are one record per line.
+     */
+    private static final class RecordSplitter {
+        private final BufferedReader reader;
+        private final Format format;
+        private long line;
+
+        RecordSplitter(BufferedReader reader, Format format) {
+            this.reader = reader;
+            this.format = format;
+        }
+
+        RawRecord next() throws IOException {
+            String text = reader.readLine();
+            if (text == null) return null;
+            long firstLine = ++line;
+            if (format == Format.CSV) {
+                int quotes = countQuotes(text);
+                StringBuilder record = null;
+                String continuation;
+                while ((quotes & 1) == 1 && (continuation = reader.readLine()) != null) {
+                    if (record == null) record = new StringBuilder(text);
+                    record.append('\n').append(continuation);
+                    quotes += countQuotes(continuation);
+                    line++;
+                }
+                if (record != null) text = record.toString();
+            }
+            return new RawRecord(firstLine, text);
+        }
+
+        private static int countQuotes(String text) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') count++;
+            }
+            return count;
+        }
+    }
+
+    private record RawRecord(long line, String text) {}
+
+    private record ParsedRow(long line, Book book, String error) {}
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    /**
+     * The outcome of reading an import file.
+     */
+    public static final class ImportResult {
+        private final List<Book> books = new ArrayList<>();
+        private final List<Rejection> rejections = new ArrayList<>();
+        private final Map<Book, Long> lines = new IdentityHashMap<>();
+        private long rows;
+
+        /** @return The valid, de-duplicated books in file order. */
+        public List<Book> getBooks() {
+            return Collections.unmodifiableList(books);
+        }
+
+        /** @return The rejected rows in file order. */
+        public List<Rejection> getRejections() {
+            return Collections.unmodifiableList(rejections);
+        }
+
+        /** @return The number of non-blank data rows read. */
+        public long getRowCount() {
+            return rows;
+        }
+
+        /**
+         * Records books the library refused because their ISBN was already in the catalog.
+         * @param skipped Books from {@link #getBooks()} that were not added.
+         */
+        public void rejectExisting(List<Book> skipped) {
+            if (skipped.isEmpty()) return;
+            Set<Book> refused = Collections.newSetFromMap(new IdentityHashMap<>());
+            refused.addAll(skipped);
+            books.removeIf(refused::contains);
+            for (Book book : skipped) {
+                rejections.add(new Rejection(lines.getOrDefault(book, 0L), "Book with ISBN " + book.getIsbn() + " already exists."));
+            }
+            rejections.sort(Comparator.comparingLong(Rejection::line));
+        }
+    }
+}
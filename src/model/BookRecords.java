@@ -0,0 +1,145 @@
+package model;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Encodes a single Book as a compact field-by-field record, shared by the
+ * snapshot file and the journal.
+ *
+ * Strings are a varint of (byte length + 1) followed by UTF-8 bytes, with 0 marking null.
+ * Loan state is a flags byte; dates are only written when present, as epoch days.
+ */
+final class BookRecords {
+
+    private static final byte TYPE_FICTION = 'F';
+    private static final byte TYPE_NON_FICTION = 'N';
+    private static final byte TYPE_REFERENCE = 'R';
+
+    private static final int FLAG_ON_LOAN = 1;
+    private static final int FLAG_LOAN_DATE = 1 << 1;
+    private static final int FLAG_DUE_DATE = 1 << 2;
+
+    private BookRecords() {}
+
+    /**
+     * Writes every field of the book, including its loan state.
+     * @param out The destination.
+     * @param book The book to encode.
+     */
+    static void write(DataOutput out, Book book) throws IOException {
+        String details;
+        if (book instanceof FictionBook fb) {
+            out.writeByte(TYPE_FICTION);
+            details = fb.getGenre();
+        } else if (book instanceof NonFictionBook nfb) {
+            out.writeByte(TYPE_NON_FICTION);
+            details = nfb.getSubject();
+        } else if (book instanceof ReferenceBook rb) {
+            out.writeByte(TYPE_REFERENCE);
+            details = rb.getCategory();
+        } else {
+            throw new IOException("Unsupported book type: " + book.getClass().getName());
+        }
+        writeString(out, book.getIsbn());
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        writeVarInt(out, book.getPublicationYear());
+        writeString(out, details);
+
+        LocalDate loanDate = book.getLoanDate();
+        LocalDate dueDate = book.getDueDate();
+        int flags = (book.isOnLoan() ? FLAG_ON_LOAN : 0)
+                | (loanDate != null ? FLAG_LOAN_DATE : 0)
+                | (dueDate != null ? FLAG_DUE_DATE : 0);
+        out.writeByte(flags);
+        writeString(out, book.getBorrower());
+        if (loanDate != null) writeVarInt(out, (int) loanDate.toEpochDay());
+        if (dueDate != null) writeVarInt(out, (int) dueDate.toEpochDay());
+    }
+
+    /**
+     * Reads a book previously written by {@link #write}.
+     * @param in A buffer positioned at the start of the record.
+     * @return The decoded book.
+     */
+    static Book read(ByteBuffer in) throws IOException {
+        try {
+            byte type = in.get();
+            String isbn = readString(in);
+            String title = readString(in);
+            String author = readString(in);
+            int year = readVarInt(in);
+            String details = readString(in);
+            Book book = switch (type) {
+                case TYPE_FICTION -> new FictionBook(isbn, title, author, year, details);
+                case TYPE_NON_FICTION -> new NonFictionBook(isbn, title, author, year, details);
+                case TYPE_REFERENCE -> new ReferenceBook(isbn, title, author, year, details);
+                default -> throw new IOException("Unknown book type tag: " + type);
+            };
+            int flags = in.get();
+            book.setOnLoan((flags & FLAG_ON_LOAN) != 0);
+            book.setBorrower(readString(in));
+            if ((flags & FLAG_LOAN_DATE) != 0) book.setLoanDate(LocalDate.ofEpochDay(readVarInt(in)));
+            if ((flags & FLAG_DUE_DATE) != 0) book.setDueDate(LocalDate.ofEpochDay(readVarInt(in)));
+            return book;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated book record", e);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length == -1) return null;
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Corrupt string length: " + length);
+        }
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an int in 7-bit groups, so lengths and years usually take one or two bytes.
+     * Negative values are zig-zag encoded first.
+     */
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    static int readVarInt(ByteBuffer in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
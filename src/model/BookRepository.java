@@ -0,0 +1,100 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+import util.ConfigLoader;
+
+/**
+ * Storage behind a {@link Library}.
+ *
+ * The Library keeps the working set in memory and calls the repository once per
+ * mutation, so an implementation only has to persist single-book changes and
+ * hand the whole catalog back at startup.
+ */
+public interface BookRepository {
+
+    /**
+     * Loads every stored book in catalog order. Called once, before any write.
+     * @return The stored books. The Library takes ownership of the returned list.
+     */
+    List<Book> loadAll() throws IOException;
+
+    /**
+     * Persists a newly added book.
+     * @param book The book that was added.
+     */
+    void add(Book book) throws IOException;
+
+    /**
+     * Persists a batch of newly added books as one write, e.g. after a bulk import.
+     * The default persists them one at a time.
+     * @param books The books that were added, in catalog order.
+     */
+    default void addAll(List<Book> books) throws IOException {
+        for (Book book : books) add(book);
+    }
+
+    /**
+     * Persists the new state of an existing book.
+     * @param book The book in its updated state.
+     */
+    void update(Book book) throws IOException;
+
+    /**
+     * Persists the removal of a book.
+     * @param isbn The ISBN of the removed book.
+     */
+    void remove(String isbn) throws IOException;
+
+    /**
+     * Blocks until every change passed to this repository so far is durable.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Rewrites the stored catalog in full, for repositories that keep a log of changes.
+     * Blocks until the rewrite is complete. The default does nothing.
+     */
+    default void compact() throws IOException {}
+
+    /**
+     * Gives the repository a way to take a consistent copy of the in-memory catalog,
+     * for example to write a snapshot. The action passed to the source runs while the
+     * Library is locked, so no mutation can interleave with it.
+     * @param source Supplies the current books to an action.
+     */
+    default void setSnapshotSource(Consumer<Consumer<List<Book>>> source) {}
+
+    /**
+     * Makes every change durable and stops the repository's background threads.
+     * The repository is not used afterwards. The default does nothing.
+     */
+    default void close() throws IOException {}
+
+    /**
+     * @return Counters describing how writes are being batched.
+     */
+    default PersistenceStats stats() {
+        return new PersistenceStats(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates the repository selected by config.properties.
+     * repository.type=jdbc uses an embedded SQL database at repository.jdbc.url;
+     * anything else uses the binary data file.
+     * @param dataFilePath The path of the binary data file.
+     * @return The configured repository.
+     */
+    static BookRepository fromConfig(String dataFilePath) {
+        if ("jdbc".equalsIgnoreCase(ConfigLoader.getProperty("repository.type"))) {
+            String url = ConfigLoader.getProperty("repository.jdbc.url");
+            return new JdbcBookRepository(url != null ? url : "jdbc:h2:./library-db",
+                    ConfigLoader.getProperty("repository.jdbc.user"),
+                    ConfigLoader.getProperty("repository.jdbc.password"),
+                    Paths.get(dataFilePath));
+        }
+        return new FileBookRepository(dataFilePath);
+    }
+}
@@ -0,0 +1,446 @@
+package model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import util.ConfigLoader;
+
+/**
+ * A column-oriented copy of the catalog, for filters that no index answers.
+ *
+ * Row i describes the book at position i of the library. Year, type and loan
+ * state sit in primitive arrays; title, author and ISBN are lower-cased and
+ * packed as UTF-8 into one byte array. A filter walks these arrays in order
+ * instead of following pointers from each Book to its strings, and never
+ * allocates a lower-cased copy per book.
+ *
+ * Substring tests anchor on a pair of adjacent keyword bytes around its
+ * rarest one, look for the pair eight positions at a time (SWAR: zero-byte
+ * tests on two overlapping longs) and compare the rest around each hit. When most rows are candidates, the packed text is swept
+ * once from start to end rather than field by field. Because UTF-8 is
+ * self-synchronizing, a byte match is exactly a String.contains() match.
+ *
+ * Catalogs above search.parallelThreshold rows (default 200,000) are scanned
+ * in chunks on a dedicated fork/join pool of search.parallelism threads
+ * (default: one per core). Each chunk produces its own matches, and the
+ * chunks are joined in row order, so the result doesn't depend on timing.
+ *
+ * An updated row's text is rewritten in place if it fits, and appended
+ * otherwise; the text is repacked into row order before the next sweep,
+ * and once most of it is garbage.
+ */
+final class CatalogColumns {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+    private static final int FIELDS = 3; // title, author, ISBN
+    private static final int MIN_REPACK_BYTES = 1 << 20;
+    /** Rows per unit of parallel work: a few hundred KiB of columns and text, which stays in cache. */
+    private static final int CHUNK_ROWS = 16_384;
+    private static final long PARALLEL_THRESHOLD = ConfigLoader.getLongProperty("search.parallelThreshold", 200_000);
+    private static ForkJoinPool scanPool; // created on the first parallel scan
+
+    private int size;
+    private int[] years = new int[16];
+    private byte[] types = new byte[16];
+    private byte[] onLoan = new byte[16];
+    private int[] bounds = new int[16 * (FIELDS + 1)]; // per row: start of each field, then end of the last
+    private byte[] text = new byte[1024];
+    private int textLength;
+    private long liveText;
+    private boolean ordered = true; // rows' text ascends through the array, so it can be swept
+    private final long[] byteCounts = new long[256];
+    private final List<String> typeNames = new ArrayList<>();
+
+    /**
+     * Copies the catalog into columns.
+     * @param rows The number of books.
+     * @param bookAt Returns the book at a position, with its loan state applied.
+     */
+    CatalogColumns(int rows, IntFunction<Book> bookAt) {
+        for (int row = 0; row < rows; row++) add(bookAt.apply(row));
+    }
+
+    /**
+     * Appends a row for a book added at the end of the catalog.
+     */
+    void add(Book book) {
+        if (size == years.length) {
+            int capacity = size * 2;
+            years = Arrays.copyOf(years, capacity);
+            types = Arrays.copyOf(types, capacity);
+            onLoan = Arrays.copyOf(onLoan, capacity);
+            bounds = Arrays.copyOf(bounds, capacity * (FIELDS + 1));
+        }
+        int row = size++;
+        writeColumns(row, book);
+        writeText(row, encode(book), textLength);
+    }
+
+    /**
+     * Replaces the row of an updated book.
+     */
+    void set(int row, Book book) {
+        int at = row * (FIELDS + 1);
+        int start = bounds[at];
+        int room = bounds[at + FIELDS] - start;
+        liveText -= room;
+        writeColumns(row, book);
+        byte[][] fields = encode(book);
+        if (length(fields) <= room) {
+            writeText(row, fields, start); // leaves a gap that belongs to no field
+        } else {
+            if (row != size - 1) ordered = false;
+            writeText(row, fields, textLength);
+        }
+        if (textLength > MIN_REPACK_BYTES && textLength > 2 * liveText) repack();
+    }
+
+    /**
+     * Removes a row; later rows move up one, as in the catalog list.
+     */
+    void remove(int row) {
+        liveText -= bounds[row * (FIELDS + 1) + FIELDS] - bounds[row * (FIELDS + 1)];
+        int after = size - row - 1;
+        System.arraycopy(years, row + 1, years, row, after);
+        System.arraycopy(types, row + 1, types, row, after);
+        System.arraycopy(onLoan, row + 1, onLoan, row, after);
+        System.arraycopy(bounds, (row + 1) * (FIELDS + 1), bounds, row * (FIELDS + 1), after * (FIELDS + 1));
+        size--;
+    }
+
+    /**
+     * Records that a book was lent or returned.
+     */
+    void setOnLoan(int row, boolean loaned) {
+        onLoan[row] = (byte) (loaned ? 1 : 0);
+    }
+
+    /**
+     * @return The positions of the books matching the filter, in ascending order.
+     */
+    int[] filter(BookFilter filter) {
+        int type = -1;
+        if (filter.type() != null) {
+            type = typeNames.indexOf(filter.type());
+            if (type < 0) return new int[0];
+        }
+        int minYear = filter.minYear() != null ? filter.minYear() : Integer.MIN_VALUE;
+        int maxYear = filter.maxYear() != null ? filter.maxYear() : Integer.MAX_VALUE;
+        int loan = filter.onLoan() == null ? -1 : filter.onLoan() ? 1 : 0;
+        byte[] needle = filter.text() != null ? filter.text().toLowerCase().getBytes(StandardCharsets.UTF_8) : null;
+        if (needle != null && needle.length == 0) needle = null;
+        if (needle != null && !ordered) repack(); // before any chunk sweeps the text
+        Criteria criteria = new Criteria(type, minYear, maxYear, loan, needle, needle != null ? rarestByte(needle) : 0);
+
+        int[][] parts = new int[chunks()][];
+        forEachChunk((from, to, chunk) -> parts[chunk] = scan(criteria, from, to));
+        // Concatenating in chunk order keeps the result in row order, however the chunks ran.
+        int total = 0;
+        for (int[] part : parts) total += part.length;
+        int[] rows = new int[total];
+        int at = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, rows, at, part.length);
+            at += part.length;
+        }
+        return rows;
+    }
+
+    /**
+     * @return The number of books of each type.
+     */
+    Map<String, Integer> countByType() {
+        int[][] parts = new int[chunks()][];
+        forEachChunk((from, to, chunk) -> {
+            int[] counts = new int[typeNames.size()];
+            for (int row = from; row < to; row++) counts[types[row]]++;
+            parts[chunk] = counts;
+        });
+        Map<String, Integer> byType = new HashMap<>();
+        for (int type = 0; type < typeNames.size(); type++) {
+            int count = 0;
+            for (int[] part : parts) count += part[type];
+            if (count > 0) byType.put(typeNames.get(type), count);
+        }
+        return byType;
+    }
+
+    /** A filter resolved against the columns. */
+    private record Criteria(int type, int minYear, int maxYear, int loan, byte[] needle, int anchor) {}
+
+    /** Filters rows [from, to). */
+    private int[] scan(Criteria criteria, int from, int to) {
+        int type = criteria.type();
+        int minYear = criteria.minYear();
+        int maxYear = criteria.maxYear();
+        int loan = criteria.loan();
+
+        // Primitive columns first, without branches: the row is always written and
+        // the count only advances on a match, so random data costs no mispredictions.
+        int[] rows = new int[to - from];
+        int count = 0;
+        for (int row = from; row < to; row++) {
+            int year = years[row];
+            boolean match = (type < 0 | types[row] == type)
+                    & (year >= minYear & year <= maxYear)
+                    & (loan < 0 | onLoan[row] == loan);
+            rows[count] = row;
+            count += match ? 1 : 0;
+        }
+        byte[] needle = criteria.needle();
+        if (needle != null) {
+            if (count < (to - from) / 8) {
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    if (textContains(rows[i], needle, criteria.anchor())) rows[kept++] = rows[i];
+                }
+                count = kept;
+            } else {
+                count = sweep(rows, count, needle, criteria.anchor());
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /** Receives one chunk of rows, [from, to), and the chunk's number. */
+    @FunctionalInterface
+    private interface ChunkScan {
+        void scan(int from, int to, int chunk);
+    }
+
+    private int chunks() {
+        return Math.max(1, (size + CHUNK_ROWS - 1) / CHUNK_ROWS);
+    }
+
+    /**
+     * Runs a scan over every chunk of rows: in the calling thread for small catalogs,
+     * otherwise on the scan pool. Chunks write only their own results, so the caller
+     * combines them in chunk order.
+     */
+    private void forEachChunk(ChunkScan scan) {
+        int chunks = chunks();
+        if (size < PARALLEL_THRESHOLD || chunks == 1) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                scan.scan(chunk * CHUNK_ROWS, Math.min(size, (chunk + 1) * CHUNK_ROWS), chunk);
+            }
+            return;
+        }
+        scanPool().invoke(new ChunkTask(scan, 0, chunks, size));
+    }
+
+    private static synchronized ForkJoinPool scanPool() {
+        if (scanPool == null) {
+            int parallelism = (int) ConfigLoader.getLongProperty("search.parallelism", Runtime.getRuntime().availableProcessors());
+            scanPool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("catalog-scan-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return scanPool;
+    }
+
+    /** Splits a range of chunks in halves until each task has one chunk. */
+    private static final class ChunkTask extends RecursiveAction {
+        private final ChunkScan scan;
+        private final int first;
+        private final int end;
+        private final int rows;
+
+        ChunkTask(ChunkScan scan, int first, int end, int rows) {
+            this.scan = scan;
+            this.first = first;
+            this.end = end;
+            this.rows = rows;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first == 1) {
+                scan.scan(first * CHUNK_ROWS, Math.min(rows, (first + 1) * CHUNK_ROWS), first);
+                return;
+            }
+            int middle = (first + end) >>> 1;
+            invokeAll(new ChunkTask(scan, first, middle, rows), new ChunkTask(scan, middle, end, rows));
+        }
+    }
+
+    private void writeColumns(int row, Book book) {
+        years[row] = book.getPublicationYear();
+        types[row] = typeCode(book.getType());
+        onLoan[row] = (byte) (book.isOnLoan() ? 1 : 0);
+    }
+
+    private static byte[][] encode(Book book) {
+        return new byte[][] { lowerUtf8(book.getTitle()), lowerUtf8(book.getAuthor()), lowerUtf8(book.getIsbn()) };
+    }
+
+    private static byte[] lowerUtf8(String field) {
+        return field != null ? field.toLowerCase().getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static int length(byte[][] fields) {
+        int length = 0;
+        for (byte[] field : fields) length += field.length;
+        return length;
+    }
+
+    /** Writes a row's fields at the given text position, growing the text if they go past its end. */
+    private void writeText(int row, byte[][] fields, int position) {
+        int end = position + length(fields);
+        if (end > textLength) {
+            // Keep eight bytes of slack so word reads near the end stay in bounds.
+            if (end + Long.BYTES > text.length) text = Arrays.copyOf(text, Math.max(text.length * 2, end + Long.BYTES));
+            textLength = end;
+        }
+        int at = row * (FIELDS + 1);
+        for (int field = 0; field < FIELDS; field++) {
+            bounds[at + field] = position;
+            System.arraycopy(fields[field], 0, text, position, fields[field].length);
+            for (byte b : fields[field]) byteCounts[b & 0xFF]++;
+            position += fields[field].length;
+        }
+        bounds[at + FIELDS] = position;
+        liveText += position - bounds[at];
+    }
+
+    private byte typeCode(String type) {
+        int code = typeNames.indexOf(type);
+        if (code < 0) {
+            if (typeNames.size() == Byte.MAX_VALUE) throw new IllegalStateException("Too many book types");
+            code = typeNames.size();
+            typeNames.add(type);
+        }
+        return (byte) code;
+    }
+
+    /** Copies the live text of every row, in row order, into a fresh array. */
+    private void repack() {
+        byte[] packed = new byte[(int) liveText + Long.BYTES];
+        int length = 0;
+        for (int row = 0; row < size; row++) {
+            int at = row * (FIELDS + 1);
+            int start = bounds[at];
+            int rowLength = bounds[at + FIELDS] - start;
+            System.arraycopy(text, start, packed, length, rowLength);
+            for (int field = 0; field <= FIELDS; field++) bounds[at + field] += length - start;
+            length += rowLength;
+        }
+        text = packed;
+        textLength = length;
+        ordered = true;
+    }
+
+    /**
+     * Where to anchor the search: the needle position starting a pair that holds
+     * its least frequent byte, so the pair makes the fewest false hits.
+     */
+    private int rarestByte(byte[] needle) {
+        int rarest = 0;
+        for (int i = 1; i < needle.length; i++) {
+            if (byteCounts[needle[i] & 0xFF] < byteCounts[needle[rarest] & 0xFF]) rarest = i;
+        }
+        return Math.max(0, Math.min(rarest, needle.length - 2));
+    }
+
+    private boolean textContains(int row, byte[] needle, int anchor) {
+        int at = row * (FIELDS + 1);
+        for (int field = 0; field < FIELDS; field++) {
+            int from = bounds[at + field];
+            int last = bounds[at + field + 1] - needle.length; // last possible start
+            for (int start = from; start <= last; start++) {
+                int hit = indexOfAnchor(needle, anchor, start + anchor, last + anchor + 1);
+                if (hit < 0) break;
+                start = hit - anchor;
+                if (Arrays.equals(text, start, start + needle.length, needle, 0, needle.length)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the candidate rows whose text contains the needle by sweeping the
+     * text once, jumping from one anchor byte to the next.
+     * The text must be in row order (see repack).
+     * @param rows Candidate rows, ascending; the survivors are moved to the front.
+     * @return The number of survivors.
+     */
+    private int sweep(int[] rows, int count, byte[] needle, int anchor) {
+        if (count == 0) return 0;
+        int limit = Math.min(textLength, bounds[rows[count - 1] * (FIELDS + 1) + FIELDS] + anchor);
+        int kept = 0;
+        int i = 0;
+        int position = 0; // no anchor byte before here starts a match
+        while (i < count) {
+            int at = rows[i] * (FIELDS + 1);
+            position = Math.max(position, bounds[at] + anchor);
+            int hit = indexOfAnchor(needle, anchor, position, limit);
+            if (hit < 0) break;
+            int start = hit - anchor;
+            if (start >= bounds[at + FIELDS]) {
+                // This row has no match; neither does any candidate ending before the hit.
+                do i++; while (i < count && bounds[rows[i] * (FIELDS + 1) + FIELDS] <= start);
+                position = hit;
+                continue;
+            }
+            if (fieldContains(at, start, needle)) {
+                rows[kept++] = rows[i++];
+            } else {
+                position = hit + 1;
+            }
+        }
+        return kept;
+    }
+
+    /** Whether the needle occurs at start, within the field of the row (at) that start falls in. */
+    private boolean fieldContains(int at, int start, byte[] needle) {
+        int field = 0;
+        while (bounds[at + field + 1] <= start) field++;
+        return start + needle.length <= bounds[at + field + 1]
+                && Arrays.equals(text, start, start + needle.length, needle, 0, needle.length);
+    }
+
+    /** The first position in [from, to) where the needle's anchor byte, and the one after it, occur; or -1. */
+    private int indexOfAnchor(byte[] needle, int anchor, int from, int to) {
+        long first = ONES * (needle[anchor] & 0xFF);
+        if (needle.length == 1) {
+            int i = from;
+            for (; i + Long.BYTES <= to; i += Long.BYTES) {
+                long zeros = zeroBytes((long) LONGS.get(text, i) ^ first);
+                if (zeros != 0) return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+            for (; i < to; i++) {
+                if (text[i] == needle[anchor]) return i;
+            }
+            return -1;
+        }
+        long second = ONES * (needle[anchor + 1] & 0xFF);
+        int i = from;
+        // The second read is one byte further on; the slack after the text keeps it in bounds.
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long pairs = zeroBytes((long) LONGS.get(text, i) ^ first) & zeroBytes((long) LONGS.get(text, i + 1) ^ second);
+            if (pairs != 0) return i + (Long.numberOfTrailingZeros(pairs) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (text[i] == needle[anchor] && text[i + 1] == needle[anchor + 1]) return i;
+        }
+        return -1;
+    }
+
+    /** Sets the high bit of exactly those bytes of the word that are zero. */
+    private static long zeroBytes(long word) {
+        return ~(((word & LOWS) + LOWS) | word | LOWS);
+    }
+}
@@ -0,0 +1,227 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the binary catalog snapshot (books.dat).
+ *
+ * Layout: a 12-byte header (magic "LIBC", schema version, flags, record count)
+ * followed by one framed record per book. Each frame is the payload length,
+ * a CRC32 of the payload, and the payload written by {@link BookRecords}.
+ * A record whose checksum doesn't match is skipped instead of failing the whole load.
+ */
+final class CatalogFile {
+
+    static final int MAGIC = 0x4C494243; // "LIBC"
+    static final short SCHEMA_VERSION = 1;
+    static final int HEADER_BYTES = 12;
+    static final int FRAME_HEADER_BYTES = 8;
+    static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private CatalogFile() {}
+
+    /**
+     * Writes every book to the given file, replacing its contents.
+     * @param file The destination file.
+     * @param books The books to write, in catalog order.
+     */
+    static void write(Path file, Collection<Book> books) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            buffer.putInt(MAGIC).putShort(SCHEMA_VERSION).putShort((short) 0).putInt(books.size());
+
+            RecordEncoder encoder = new RecordEncoder();
+            if (books instanceof MappedBookList mapped) {
+                // Records that were never decoded are copied straight from the mapped file.
+                for (int i = 0; i < mapped.size(); i++) {
+                    ByteBuffer frame = mapped.rawFrame(i);
+                    put(channel, buffer, frame != null ? frame : encoder.frame(mapped.get(i)));
+                }
+            } else {
+                for (Book book : books) {
+                    put(channel, buffer, encoder.frame(book));
+                }
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes the books to a temporary sibling file and swaps it in atomically, so a
+     * crash mid-write never leaves a half-written catalog behind.
+     * @param file The destination file.
+     * @param books The books to write, in catalog order.
+     */
+    static void writeAtomically(Path file, Collection<Book> books) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        write(temp, books);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads every intact record from the given file.
+     * @param file A file previously written by {@link #write}.
+     * @return The books in file order.
+     */
+    static List<Book> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            buffer.flip();
+            buffer = fill(channel, buffer, HEADER_BYTES);
+            int count = readHeader(buffer, file);
+
+            List<Book> books = new ArrayList<>(count);
+            CRC32 crc = new CRC32();
+            int skipped = 0;
+            for (int i = 0; i < count; i++) {
+                buffer = fill(channel, buffer, FRAME_HEADER_BYTES);
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    throw new IOException("Corrupt record length " + length + " in " + file);
+                }
+                buffer = fill(channel, buffer, length);
+                ByteBuffer payload = buffer.slice();
+                payload.limit(length);
+                buffer.position(buffer.position() + length);
+
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    skipped++;
+                    continue;
+                }
+                books.add(BookRecords.read(payload));
+            }
+            if (skipped > 0) {
+                System.err.println("Skipped " + skipped + " damaged record(s) in " + file);
+            }
+            return books;
+        }
+    }
+
+    /**
+     * Validates the header at the buffer's position and returns the record count.
+     */
+    static int readHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a catalog file.");
+        }
+        short version = buffer.getShort();
+        if (version > SCHEMA_VERSION) {
+            throw new IOException(file + " was written by a newer version (schema " + version + ").");
+        }
+        buffer.getShort(); // flags, reserved
+        return buffer.getInt();
+    }
+
+    static int checksum(byte[] payload, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Makes sure at least {@code needed} bytes are readable, refilling from the channel.
+     * Returns a larger buffer if the current one cannot hold that many bytes.
+     */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) return buffer;
+        if (needed > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(needed);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of catalog file.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void put(FileChannel channel, ByteBuffer buffer, ByteBuffer frame) throws IOException {
+        if (frame.remaining() > buffer.remaining()) {
+            drain(channel, buffer);
+        }
+        if (frame.remaining() > buffer.capacity()) {
+            while (frame.hasRemaining()) channel.write(frame);
+        } else {
+            buffer.put(frame);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Encodes books into checksummed frames, reusing one scratch buffer.
+     */
+    static final class RecordEncoder {
+        private final ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        ByteBuffer frame(Book book) throws IOException {
+            begin();
+            BookRecords.write(out, book);
+            return seal();
+        }
+
+        /**
+         * Starts a new frame; callers write the payload to {@link #out()} and then {@link #seal()}.
+         */
+        void begin() throws IOException {
+            bytes.reset();
+            out.writeLong(0); // placeholder for length and checksum
+        }
+
+        /**
+         * Fills in the frame header for whatever was written after the placeholder.
+         */
+        ByteBuffer seal() {
+            byte[] buf = bytes.buffer();
+            int payloadLength = bytes.size() - FRAME_HEADER_BYTES;
+            ByteBuffer frame = ByteBuffer.wrap(buf, 0, bytes.size());
+            frame.putInt(0, payloadLength);
+            frame.putInt(4, checksum(buf, FRAME_HEADER_BYTES, payloadLength));
+            return frame;
+        }
+
+        DataOutputStream out() {
+            return out;
+        }
+    }
+
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() { super(512); }
+        byte[] buffer() { return buf; }
+    }
+}
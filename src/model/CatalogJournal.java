@@ -0,0 +1,247 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of catalog mutations kept next to the snapshot file.
+ * Every add, update and removal is written as one small checksummed frame
+ * (same framing as {@link CatalogFile}), so a change at the desk no longer
+ * rewrites the whole catalog.
+ */
+class CatalogJournal {
+
+    /** The kind of mutation a journal record describes. */
+    enum Op { ADD, UPDATE, REMOVE }
+
+    /** A single replayed mutation. For REMOVE entries the book is null. */
+    record Entry(Op op, String isbn, Book book) {}
+
+    /** Receives the payload of each intact frame during {@link #replayFrames}. */
+    @FunctionalInterface
+    interface FrameHandler {
+        void accept(ByteBuffer payload) throws IOException;
+    }
+
+    private final Path path;
+    private final CatalogFile.RecordEncoder encoder = new CatalogFile.RecordEncoder();
+    private FileChannel channel;
+
+    CatalogJournal(Path path) {
+        this.path = path;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Appends an add or update record and forces it to disk.
+     * @param op Either ADD or UPDATE.
+     * @param book The book in its new state.
+     */
+    synchronized void append(Op op, Book book) throws IOException {
+        appendAll(List.of(encode(op, book)));
+    }
+
+    /**
+     * Appends a removal record and forces it to disk.
+     * @param isbn The ISBN of the removed book.
+     */
+    synchronized void appendRemove(String isbn) throws IOException {
+        appendAll(List.of(encodeRemove(isbn)));
+    }
+
+    /**
+     * Writes a batch of pre-encoded frames with a single gathering write and one force.
+     * If that fails the file is cut back to where the batch started, so a retry doesn't
+     * land behind a torn frame, which replay would stop at.
+     * @param frames Frames produced by {@link #encode} or {@link #encodeRemove}.
+     */
+    synchronized void appendAll(List<ByteBuffer> frames) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[frames.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = frames.get(i).duplicate();
+            remaining += buffers[i].remaining();
+        }
+        FileChannel ch = channel();
+        long start = ch.size();
+        try {
+            int first = 0;
+            while (remaining > 0) {
+                remaining -= ch.write(buffers, first, buffers.length - first);
+                while (first < buffers.length && !buffers[first].hasRemaining()) first++;
+            }
+            ch.force(false);
+        } catch (IOException e) {
+            try {
+                ch.truncate(start);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Encodes an add or update record. The book's state is captured now, so later
+     * in-memory edits don't leak into a record that's still waiting to be written.
+     */
+    synchronized ByteBuffer encode(Op op, Book book) throws IOException {
+        encoder.begin();
+        encoder.out().writeByte(op.ordinal());
+        BookRecords.write(encoder.out(), book);
+        return copy(encoder.seal());
+    }
+
+    synchronized ByteBuffer encodeRemove(String isbn) throws IOException {
+        encoder.begin();
+        encoder.out().writeByte(Op.REMOVE.ordinal());
+        BookRecords.writeString(encoder.out(), isbn);
+        return copy(encoder.seal());
+    }
+
+    /**
+     * @return A private copy of a frame from a {@link CatalogFile.RecordEncoder}, whose buffer is reused.
+     */
+    static ByteBuffer copy(ByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame).flip();
+        return copy;
+    }
+
+    /**
+     * @return The current size of the journal file in bytes.
+     */
+    synchronized long size() throws IOException {
+        return channel().size();
+    }
+
+    /**
+     * Moves the current journal aside so a compaction can fold it into a snapshot,
+     * and starts a fresh, empty journal for subsequent mutations.
+     * @param target Where to move the current journal.
+     */
+    synchronized void rotateTo(Path target) throws IOException {
+        close();
+        if (Files.exists(path)) {
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replaces the whole journal with the given frames, atomically: a crash leaves
+     * either the old file or the new one.
+     * @param frames The records the journal should contain from now on.
+     */
+    synchronized void rewrite(List<ByteBuffer> frames) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer frame : frames) {
+                ByteBuffer source = frame.duplicate();
+                while (source.hasRemaining()) out.write(source);
+            }
+            out.force(true);
+        }
+        close();
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Discards every record in the journal.
+     */
+    synchronized void truncate() throws IOException {
+        channel().truncate(0);
+        channel.force(true);
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    /**
+     * Replays every complete record of a journal file in order.
+     * A torn or damaged record at the tail (e.g. from a crash mid-write) is cut off
+     * so later appends start from a clean boundary.
+     * @param file The journal file to read.
+     * @param consumer Receives each decoded entry.
+     * @return The number of entries replayed.
+     */
+    static int replay(Path file, Consumer<Entry> consumer) throws IOException {
+        return replayFrames(file, payload -> consumer.accept(decode(payload)));
+    }
+
+    /**
+     * Like {@link #replay}, but hands over raw payloads, for logs that store
+     * something other than catalog mutations in the same framing.
+     * @param file The log file to read.
+     * @param handler Receives the payload of each intact frame.
+     * @return The number of frames replayed.
+     */
+    static int replayFrames(Path file, FrameHandler handler) throws IOException {
+        if (!Files.exists(file)) return 0;
+        int count = 0;
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0 || length > CatalogFile.MAX_RECORD_BYTES) break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    if (CatalogFile.checksum(payload, 0, length) != checksum) break;
+                } catch (EOFException e) {
+                    break;
+                }
+                handler.accept(ByteBuffer.wrap(payload));
+                validLength += CatalogFile.FRAME_HEADER_BYTES + payload.length;
+                count++;
+            }
+        }
+        if (validLength < Files.size(file)) {
+            System.err.println("Discarding incomplete journal record at the end of " + file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(validLength);
+            }
+        }
+        return count;
+    }
+
+    private static Entry decode(ByteBuffer payload) throws IOException {
+        Op op = Op.values()[payload.get()];
+        if (op == Op.REMOVE) {
+            return new Entry(op, BookRecords.readString(payload), null);
+        }
+        Book book = BookRecords.read(payload);
+        return new Entry(op, book.getIsbn(), book);
+    }
+}
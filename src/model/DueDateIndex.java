@@ -0,0 +1,85 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The books on loan, sorted by due date, so the books overdue on a day or due
+ * within a range of days are read off a range of the order without looking at
+ * any other book.
+ *
+ * The number of overdue books is kept up to date as loans open and close. Asked
+ * about a later day, only the loans that fell due in between are counted.
+ * Loans without a due date are left out.
+ */
+final class DueDateIndex {
+
+    private static final Comparator<Loan> DUE_ORDER = Comparator.comparing(Loan::dueDate).thenComparing(Loan::isbn);
+
+    private final NavigableMap<Loan, Book> byDueDate = new TreeMap<>(DUE_ORDER);
+    private LocalDate overdueAsOf; // the day overdueCount was counted for; null until first asked
+    private int overdueCount;
+
+    /**
+     * Adds a loan, or replaces the book of one already indexed.
+     */
+    void put(Loan loan, Book book) {
+        if (loan.dueDate() == null) return;
+        if (byDueDate.put(loan, book) == null && isCountedOverdue(loan)) overdueCount++;
+    }
+
+    /**
+     * Drops a loan that was closed.
+     */
+    void remove(Loan loan) {
+        if (loan.dueDate() == null) return;
+        if (byDueDate.remove(loan) != null && isCountedOverdue(loan)) overdueCount--;
+    }
+
+    /**
+     * @return The books due before the day, the longest overdue first.
+     */
+    List<Book> overdue(LocalDate asOf) {
+        return new ArrayList<>(byDueDate.headMap(firstDueOn(asOf), false).values());
+    }
+
+    /**
+     * @param to The last due date to include; {@link LocalDate#MAX} for no limit.
+     * @return The books due within the days, soonest first.
+     */
+    List<Book> dueBetween(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) return new ArrayList<>();
+        NavigableMap<Loan, Book> range = to.equals(LocalDate.MAX)
+                ? byDueDate.tailMap(firstDueOn(from), true)
+                : byDueDate.subMap(firstDueOn(from), true, firstDueOn(to.plusDays(1)), false);
+        return new ArrayList<>(range.values());
+    }
+
+    /**
+     * @return The number of books due before the day.
+     */
+    int countOverdue(LocalDate asOf) {
+        if (overdueAsOf == null) {
+            overdueCount = byDueDate.headMap(firstDueOn(asOf), false).size();
+        } else if (asOf.isAfter(overdueAsOf)) {
+            overdueCount += byDueDate.subMap(firstDueOn(overdueAsOf), true, firstDueOn(asOf), false).size();
+        } else if (asOf.isBefore(overdueAsOf)) {
+            overdueCount -= byDueDate.subMap(firstDueOn(asOf), true, firstDueOn(overdueAsOf), false).size();
+        }
+        overdueAsOf = asOf;
+        return overdueCount;
+    }
+
+    private boolean isCountedOverdue(Loan loan) {
+        return overdueAsOf != null && loan.dueDate().isBefore(overdueAsOf);
+    }
+
+    /** A key that sorts before every loan due on the day and after every loan due earlier. */
+    private static Loan firstDueOn(LocalDate day) {
+        return new Loan("", null, null, day);
+    }
+}
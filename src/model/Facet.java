@@ -0,0 +1,30 @@
+package model;
+
+/**
+ * The book attributes the catalog can be sliced by, see {@link Library#filterFacets}.
+ */
+public enum Facet {
+    /** {@link Book#getType()}: Fiction, Non-Fiction or Reference. */
+    TYPE,
+    /** {@link Book#getDetails()}: the genre, subject or category, e.g. "Genre: Fantasy". */
+    DETAILS,
+    /** The publication year. */
+    YEAR,
+    /** {@link #ON_LOAN} or {@link #AVAILABLE}. */
+    STATUS;
+
+    public static final String ON_LOAN = "On Loan";
+    public static final String AVAILABLE = "Available";
+
+    /**
+     * @return The book's value for this facet, as it is counted and displayed.
+     */
+    String valueOf(Book book) {
+        return switch (this) {
+            case TYPE -> book.getType();
+            case DETAILS -> book.getDetails();
+            case YEAR -> Integer.toString(book.getPublicationYear());
+            case STATUS -> book.isOnLoan() ? ON_LOAN : AVAILABLE;
+        };
+    }
+}
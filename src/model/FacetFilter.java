@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * The facet values to keep, for {@link Library#filterFacets}. A null criterion keeps every value.
+ * @param type The book type, as returned by {@link Book#getType()}.
+ * @param details The genre, subject or category, as returned by {@link Book#getDetails()}.
+ * @param minYear The earliest publication year, inclusive.
+ * @param maxYear The latest publication year, inclusive.
+ * @param onLoan Whether the book must be on loan (true) or available (false).
+ */
+public record FacetFilter(String type, String details, Integer minYear, Integer maxYear, Boolean onLoan) {
+
+    /** Keeps every book. */
+    public static final FacetFilter ALL = new FacetFilter(null, null, null, null, null);
+}
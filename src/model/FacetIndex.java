@@ -0,0 +1,256 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Bitmap indexes over the facets of the catalog, for faceted filtering.
+ *
+ * Row i describes the book at position i of the library. For every facet, each
+ * distinct value gets a code and a compressed {@link RowBitmap} of the rows that
+ * have it, and a code column records the value of each row.
+ *
+ * Over the whole catalog, a filter ORs the bitmaps of a facet's accepted values
+ * into a dense scratch bitmap (several years, for a range) and ANDs the facets
+ * together, a word at a time. The count for a value is its bitmap counted against
+ * the AND of the other facets, so each count says what choosing that value would
+ * leave. Within a given set of rows, such as search results, reading the code
+ * columns is cheaper than building bitmaps for them.
+ *
+ * Removing a row moves every later row up one, which the bitmaps can't absorb in
+ * place; the code columns are shifted and the bitmaps rebuilt from them when next
+ * needed.
+ */
+final class FacetIndex {
+
+    private static final Facet[] FACETS = Facet.values();
+
+    private int size;
+    private int[][] codes = new int[FACETS.length][16]; // per facet, the value code of each row
+    private final Values[] values = new Values[FACETS.length];
+    private boolean bitmapsStale;
+
+    /**
+     * Indexes the catalog.
+     * @param rows The number of books.
+     * @param bookAt Returns the book at a position, with its loan state applied.
+     */
+    FacetIndex(int rows, IntFunction<Book> bookAt) {
+        for (int f = 0; f < FACETS.length; f++) values[f] = new Values();
+        for (int row = 0; row < rows; row++) add(bookAt.apply(row));
+    }
+
+    /**
+     * Appends a row for a book added at the end of the catalog.
+     */
+    void add(Book book) {
+        if (size == codes[0].length) {
+            for (int f = 0; f < FACETS.length; f++) codes[f] = Arrays.copyOf(codes[f], size * 2);
+        }
+        int row = size++;
+        for (int f = 0; f < FACETS.length; f++) setCode(f, row, values[f].code(FACETS[f].valueOf(book)));
+    }
+
+    /**
+     * Replaces the row of an updated book.
+     */
+    void set(int row, Book book) {
+        for (int f = 0; f < FACETS.length; f++) {
+            int code = values[f].code(FACETS[f].valueOf(book));
+            if (code == codes[f][row]) continue;
+            if (!bitmapsStale) values[f].rows.get(codes[f][row]).remove(row);
+            setCode(f, row, code);
+        }
+    }
+
+    /**
+     * Records that a book was lent or returned.
+     */
+    void setOnLoan(int row, boolean loaned) {
+        int f = Facet.STATUS.ordinal();
+        int code = values[f].code(loaned ? Facet.ON_LOAN : Facet.AVAILABLE);
+        if (code == codes[f][row]) return;
+        if (!bitmapsStale) values[f].rows.get(codes[f][row]).remove(row);
+        setCode(f, row, code);
+    }
+
+    /**
+     * Removes a row; later rows move up one, as in the catalog list.
+     */
+    void remove(int row) {
+        for (int f = 0; f < FACETS.length; f++) System.arraycopy(codes[f], row + 1, codes[f], row, size - row - 1);
+        size--;
+        bitmapsStale = true;
+    }
+
+    /** The rows that passed a filter, and the value counts of each facet. */
+    record Selection(int[] rows, Map<Facet, Map<String, Integer>> counts) {}
+
+    /**
+     * Filters rows and counts facet values.
+     * @param rows The rows to filter, in the order to keep them; null for the whole catalog.
+     */
+    Selection select(FacetFilter filter, int[] rows) {
+        boolean[][] accepted = new boolean[FACETS.length][];
+        accepted[Facet.TYPE.ordinal()] = accept(Facet.TYPE, filter.type());
+        accepted[Facet.DETAILS.ordinal()] = accept(Facet.DETAILS, filter.details());
+        accepted[Facet.YEAR.ordinal()] = acceptYears(filter.minYear(), filter.maxYear());
+        accepted[Facet.STATUS.ordinal()] = filter.onLoan() == null ? null
+                : accept(Facet.STATUS, filter.onLoan() ? Facet.ON_LOAN : Facet.AVAILABLE);
+        int[][] counts = new int[FACETS.length][];
+        for (int f = 0; f < FACETS.length; f++) counts[f] = new int[values[f].names.size()];
+
+        int[] kept = rows == null ? selectAll(accepted, counts) : selectWithin(rows, accepted, counts);
+
+        Map<Facet, Map<String, Integer>> byFacet = new EnumMap<>(Facet.class);
+        for (int f = 0; f < FACETS.length; f++) byFacet.put(FACETS[f], values[f].inOrder(FACETS[f], counts[f]));
+        return new Selection(kept, byFacet);
+    }
+
+    private int[] selectAll(boolean[][] accepted, int[][] counts) {
+        if (bitmapsStale) rebuildBitmaps();
+        int words = (size + Long.SIZE - 1) / Long.SIZE;
+        long[][] chosen = new long[FACETS.length][]; // per facet with a criterion: its accepted rows
+        for (int f = 0; f < FACETS.length; f++) {
+            if (accepted[f] == null) continue;
+            chosen[f] = new long[words];
+            for (int code = 0; code < accepted[f].length; code++) {
+                if (accepted[f][code]) values[f].rows.get(code).orInto(chosen[f]);
+            }
+        }
+        for (int f = 0; f < FACETS.length; f++) {
+            long[] others = intersect(chosen, f, words);
+            List<RowBitmap> rowsByCode = values[f].rows;
+            for (int code = 0; code < rowsByCode.size(); code++) {
+                RowBitmap bitmap = rowsByCode.get(code);
+                counts[f][code] = others == null ? bitmap.cardinality() : bitmap.andCardinality(others);
+            }
+        }
+
+        long[] all = intersect(chosen, -1, words);
+        if (all == null) {
+            int[] every = new int[size];
+            for (int row = 0; row < size; row++) every[row] = row;
+            return every;
+        }
+        int total = 0;
+        for (long word : all) total += Long.bitCount(word);
+        int[] kept = new int[total];
+        int n = 0;
+        for (int w = 0; w < words; w++) {
+            for (long word = all[w]; word != 0; word &= word - 1) kept[n++] = w * Long.SIZE + Long.numberOfTrailingZeros(word);
+        }
+        return kept;
+    }
+
+    /** The AND of every facet's chosen rows except one (or of all, for -1); null when none has a criterion. */
+    private static long[] intersect(long[][] chosen, int except, int words) {
+        long[] result = null;
+        for (int f = 0; f < chosen.length; f++) {
+            if (f == except || chosen[f] == null) continue;
+            if (result == null) {
+                result = chosen[f].clone();
+            } else {
+                for (int w = 0; w < words; w++) result[w] &= chosen[f][w];
+            }
+        }
+        return result;
+    }
+
+    private int[] selectWithin(int[] rows, boolean[][] accepted, int[][] counts) {
+        int[] kept = new int[rows.length];
+        int n = 0;
+        for (int row : rows) {
+            int failed = 0;
+            int failedFacet = -1;
+            for (int f = 0; f < FACETS.length; f++) {
+                if (accepted[f] != null && !accepted[f][codes[f][row]]) {
+                    failed++;
+                    failedFacet = f;
+                }
+            }
+            if (failed == 0) {
+                kept[n++] = row;
+                for (int f = 0; f < FACETS.length; f++) counts[f][codes[f][row]]++;
+            } else if (failed == 1) {
+                counts[failedFacet][codes[failedFacet][row]]++; // would pass if this facet's criterion changed
+            }
+        }
+        return Arrays.copyOf(kept, n);
+    }
+
+    /** Which codes of a facet match a single value; null when any value does. */
+    private boolean[] accept(Facet facet, String value) {
+        if (value == null) return null;
+        Values facetValues = values[facet.ordinal()];
+        boolean[] accepted = new boolean[facetValues.names.size()];
+        Integer code = facetValues.codes.get(value);
+        if (code != null) accepted[code] = true;
+        return accepted;
+    }
+
+    private boolean[] acceptYears(Integer minYear, Integer maxYear) {
+        if (minYear == null && maxYear == null) return null;
+        List<String> years = values[Facet.YEAR.ordinal()].names;
+        boolean[] accepted = new boolean[years.size()];
+        for (int code = 0; code < years.size(); code++) {
+            int year = Integer.parseInt(years.get(code));
+            accepted[code] = (minYear == null || year >= minYear) && (maxYear == null || year <= maxYear);
+        }
+        return accepted;
+    }
+
+    private void setCode(int f, int row, int code) {
+        codes[f][row] = code;
+        if (!bitmapsStale) values[f].rows.get(code).add(row);
+    }
+
+    private void rebuildBitmaps() {
+        for (int f = 0; f < FACETS.length; f++) {
+            List<RowBitmap> rowsByCode = values[f].rows;
+            for (int code = 0; code < rowsByCode.size(); code++) rowsByCode.set(code, new RowBitmap());
+            for (int row = 0; row < size; row++) rowsByCode.get(codes[f][row]).add(row);
+        }
+        bitmapsStale = false;
+    }
+
+    /** The distinct values of one facet and their rows. */
+    private static final class Values {
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<RowBitmap> rows = new ArrayList<>();
+
+        int code(String name) {
+            Integer code = codes.get(name);
+            if (code == null) {
+                code = names.size();
+                names.add(name);
+                codes.put(name, code);
+                rows.add(new RowBitmap());
+            }
+            return code;
+        }
+
+        /** The values with a non-zero count, in display order. */
+        Map<String, Integer> inOrder(Facet facet, int[] counts) {
+            Integer[] order = new Integer[names.size()];
+            for (int code = 0; code < order.length; code++) order[code] = code;
+            if (facet == Facet.YEAR) {
+                Arrays.sort(order, (a, b) -> Integer.compare(Integer.parseInt(names.get(a)), Integer.parseInt(names.get(b))));
+            } else {
+                Arrays.sort(order, (a, b) -> String.valueOf(names.get(a)).compareTo(String.valueOf(names.get(b))));
+            }
+            Map<String, Integer> inOrder = new LinkedHashMap<>();
+            for (int code : order) {
+                if (counts[code] > 0) inOrder.put(names.get(code), counts[code]);
+            }
+            return inOrder;
+        }
+    }
+}
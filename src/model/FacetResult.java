@@ -0,0 +1,14 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of {@link Library#filterFacets}.
+ * @param books The books that passed the filter.
+ * @param counts For each facet, how many books each value would leave if it were chosen
+ *               instead, with the other facets' criteria unchanged. Values are in display
+ *               order (years ascending, the rest alphabetically); values no book has are left out.
+ */
+public record FacetResult(List<Book> books, Map<Facet, Map<String, Integer>> counts) {
+}
@@ -0,0 +1,250 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import util.ConfigLoader;
+
+/**
+ * Stores the catalog in the binary data file (see {@link CatalogFile}).
+ *
+ * Mutations are appended to a journal next to the data file by a background
+ * writer that coalesces bursts into one write (see persistence.maxStalenessMillis);
+ * the journal is folded into a fresh snapshot once it grows past a threshold.
+ * With catalog.mapped=true the data file is memory-mapped and books are decoded
+ * only when a lookup, search hit or visible row needs them.
+ */
+public class FileBookRepository implements BookRepository {
+
+    private final Path dataFile;
+    private final CatalogJournal journal;
+    private final JournalWriter journalWriter;
+    private final Path compactingJournalPath;
+    private final long compactionThresholdBytes;
+    private final ExecutorService compactor;
+    private Future<?> pendingCompaction = CompletableFuture.completedFuture(null);
+    private Consumer<Consumer<List<Book>>> snapshotSource;
+
+    /**
+     * @param dataFilePath The path to the file where book data is stored.
+     */
+    public FileBookRepository(String dataFilePath) {
+        this.dataFile = Paths.get(dataFilePath);
+        this.journal = new CatalogJournal(Paths.get(dataFilePath + ".journal"));
+        this.compactingJournalPath = Paths.get(dataFilePath + ".journal.compacting");
+        this.compactionThresholdBytes = ConfigLoader.getLongProperty("journal.compaction.threshold.bytes", 1024 * 1024);
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "library-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        long maxStalenessMillis = ConfigLoader.getLongProperty("persistence.maxStalenessMillis", 500);
+        this.journalWriter = new JournalWriter(journal, maxStalenessMillis, () -> compactor.execute(this::compactIfNeeded));
+    }
+
+    /**
+     * Loads the snapshot and replays the journal on top of it.
+     * If the file doesn't exist, it starts with an empty catalog. A file still in the
+     * old object-serialization format is converted to the binary catalog format first.
+     */
+    @Override
+    public List<Book> loadAll() throws IOException {
+        List<Book> books;
+        if (!Files.exists(dataFile)) {
+            System.out.println("No existing data file found. A new one will be created on save.");
+            books = new ArrayList<>();
+        } else {
+            LegacyCatalogMigrator.migrateIfNeeded(dataFile);
+            if (Boolean.parseBoolean(ConfigLoader.getProperty("catalog.mapped"))) {
+                books = new MappedBookList(MappedCatalog.open(dataFile));
+            } else {
+                books = CatalogFile.read(dataFile);
+            }
+        }
+        return replayJournal(books);
+    }
+
+    @Override
+    public void add(Book book) throws IOException {
+        journalWriter.submit(journal.encode(CatalogJournal.Op.ADD, book));
+    }
+
+    /**
+     * Journals the whole batch with one write and one fsync, and returns once it is on disk.
+     * A large batch pushes the journal past the threshold, so it is folded into the
+     * snapshot straight afterwards.
+     */
+    @Override
+    public void addAll(List<Book> books) throws IOException {
+        List<ByteBuffer> frames = new ArrayList<>(books.size());
+        for (Book book : books) frames.add(journal.encode(CatalogJournal.Op.ADD, book));
+        journalWriter.submitAll(frames);
+    }
+
+    @Override
+    public void update(Book book) throws IOException {
+        journalWriter.submit(journal.encode(CatalogJournal.Op.UPDATE, book));
+    }
+
+    @Override
+    public void remove(String isbn) throws IOException {
+        journalWriter.submit(journal.encodeRemove(isbn));
+    }
+
+    /**
+     * Blocks until every mutation made so far has been written to the journal, and
+     * until a compaction that is already running has finished.
+     * Mutations otherwise reach disk within the configured staleness.
+     */
+    @Override
+    public void flush() {
+        journalWriter.flush();
+        awaitCompaction(currentCompaction());
+    }
+
+    /**
+     * Writes a full snapshot of the current books and clears the journal.
+     * Day-to-day mutations don't need this; they are journaled and compacted automatically.
+     */
+    @Override
+    public void compact() {
+        awaitCompaction(currentCompaction());
+        awaitCompaction(scheduleCompaction());
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        journalWriter.close();
+        compactor.shutdown();
+        journal.close();
+    }
+
+    @Override
+    public void setSnapshotSource(Consumer<Consumer<List<Book>>> source) {
+        this.snapshotSource = source;
+    }
+
+    @Override
+    public PersistenceStats stats() {
+        return journalWriter.stats();
+    }
+
+    private void compactIfNeeded() {
+        try {
+            if (journal.size() >= compactionThresholdBytes) {
+                scheduleCompaction();
+            }
+        } catch (IOException e) {
+            System.err.println("Error checking journal size: " + e.getMessage());
+        }
+    }
+
+    private synchronized Future<?> currentCompaction() {
+        return pendingCompaction;
+    }
+
+    /**
+     * Moves the live journal aside and folds it into a new snapshot on the compactor thread.
+     * Only one compaction runs at a time; a request while one is pending joins it.
+     */
+    private synchronized Future<?> scheduleCompaction() {
+        if (!pendingCompaction.isDone() || snapshotSource == null) {
+            return pendingCompaction;
+        }
+        List<List<Book>> copy = new ArrayList<>(1);
+        snapshotSource.accept(books -> {
+            journalWriter.flush(); // queued records belong to the journal being folded
+            try {
+                journal.rotateTo(compactingJournalPath);
+                copy.add(books);
+            } catch (IOException e) {
+                System.err.println("Error rotating journal: " + e.getMessage());
+            }
+        });
+        if (copy.isEmpty()) {
+            return pendingCompaction;
+        }
+        pendingCompaction = compactor.submit(() -> {
+            try {
+                CatalogFile.writeAtomically(dataFile, copy.get(0));
+                Files.deleteIfExists(compactingJournalPath);
+            } catch (IOException e) {
+                // The rotated journal stays on disk and is replayed at the next startup.
+                System.err.println("Error compacting book data: " + e.getMessage());
+            }
+        });
+        return pendingCompaction;
+    }
+
+    private void awaitCompaction(Future<?> compaction) {
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error saving book data: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Replays journal records on top of the loaded snapshot. A journal left over from
+     * an interrupted compaction is replayed first and folded in immediately.
+     * Adds and updates are treated as upserts so that replaying a journal over a
+     * snapshot that already contains it is harmless.
+     */
+    private List<Book> replayJournal(List<Book> snapshot) throws IOException {
+        boolean interruptedCompaction = Files.exists(compactingJournalPath);
+        List<Book> books;
+        int replayed;
+        if (snapshot instanceof MappedBookList mapped) {
+            Consumer<CatalogJournal.Entry> apply = entry -> {
+                int index = mapped.indexOfIsbn(entry.isbn());
+                if (entry.op() == CatalogJournal.Op.REMOVE) {
+                    if (index >= 0) mapped.remove(index);
+                } else if (index >= 0) {
+                    mapped.set(index, entry.book());
+                } else {
+                    mapped.add(entry.book());
+                }
+            };
+            replayed = CatalogJournal.replay(compactingJournalPath, apply);
+            replayed += CatalogJournal.replay(journal.path(), apply);
+            books = mapped;
+        } else {
+            Map<String, Book> byIsbn = new LinkedHashMap<>();
+            for (Book book : snapshot) byIsbn.put(book.getIsbn(), book);
+            Consumer<CatalogJournal.Entry> apply = entry -> {
+                if (entry.op() == CatalogJournal.Op.REMOVE) {
+                    byIsbn.remove(entry.isbn());
+                } else {
+                    byIsbn.put(entry.isbn(), entry.book());
+                }
+            };
+            replayed = CatalogJournal.replay(compactingJournalPath, apply);
+            replayed += CatalogJournal.replay(journal.path(), apply);
+            books = replayed > 0 ? new ArrayList<>(byIsbn.values()) : snapshot;
+        }
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journaled change(s).");
+        }
+        if (interruptedCompaction) {
+            CatalogFile.writeAtomically(dataFile, books);
+            Files.deleteIfExists(compactingJournalPath);
+            journal.truncate();
+        }
+        return books;
+    }
+}
@@ -0,0 +1,171 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * A hash index from ISBN to position in a list of books.
+ *
+ * Like the ISBN table in {@link MappedCatalog}, it is an open-addressing table of
+ * ints (position + 1, 0 = empty) that reads the keys back from the list itself,
+ * so it costs a few bytes per book and no extra objects. Lookups and appends are
+ * O(1), and single entries can be removed when positions are stable.
+ *
+ * When removing a book shifts later positions down, {@link #removeAndShift} leaves
+ * the numbers in the table alone and notes the removed position instead; a stored
+ * number is then read as itself minus the removals before it. Once about the square
+ * root of the size have built up, the table is renumbered in one pass, so a removal
+ * costs O(sqrt n) amortized rather than a rebuild.
+ */
+final class IsbnIndex {
+
+    private static final int MIN_RENUMBER_REMOVALS = 32;
+
+    private final IntFunction<String> isbnAt;
+    private int[] slots = new int[16];
+    private int count;
+    private int[] removed = new int[16]; // stored numbers of shifted-out positions, ascending
+    private int removedCount;
+
+    /**
+     * @param isbnAt Returns the ISBN of the book at a list position.
+     */
+    IsbnIndex(IntFunction<String> isbnAt) {
+        this.isbnAt = isbnAt;
+    }
+
+    /**
+     * @param isbn The ISBN to look up.
+     * @return The position of the book with that ISBN, or -1 if none is indexed.
+     */
+    int find(String isbn) {
+        int mask = slots.length - 1;
+        for (int slot = spread(isbn.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int position = positionOf(slots[slot] - 1);
+            if (isbnAt.apply(position).equals(isbn)) return position;
+        }
+        return -1;
+    }
+
+    /**
+     * Indexes the book now at the given position. The ISBN must not be indexed yet.
+     * @param position The position of a newly added book.
+     */
+    void add(int position) {
+        if ((count + 1) * 2 > slots.length) {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            for (int entry : old) {
+                if (entry != 0) insert(entry - 1);
+            }
+        }
+        insert(storedOf(position));
+        count++;
+    }
+
+    /**
+     * Drops the entry for a position whose ISBN can still be read.
+     * @param position The position to unindex.
+     */
+    void remove(int position) {
+        unlink(position, storedOf(position));
+    }
+
+    /**
+     * Drops the entry for a position that is about to be removed from the list, and
+     * from then on reads every later position as one lower. Call it before removing
+     * the book, while its ISBN can still be read.
+     * @param position The position being removed.
+     */
+    void removeAndShift(int position) {
+        int stored = storedOf(position);
+        unlink(position, stored);
+        int at = rank(stored);
+        if (removedCount == removed.length) removed = Arrays.copyOf(removed, removedCount * 2);
+        System.arraycopy(removed, at, removed, at + 1, removedCount - at);
+        removed[at] = stored;
+        removedCount++;
+        if (removedCount > Math.max(MIN_RENUMBER_REMOVALS, (int) Math.sqrt(count))) renumber();
+    }
+
+    /**
+     * Discards the index and indexes positions [from, to) again.
+     */
+    void rebuild(int from, int to) {
+        int needed = Math.max(16, Integer.highestOneBit(Math.max(1, to - from)) << 2);
+        slots = new int[needed];
+        count = 0;
+        removedCount = 0;
+        for (int position = from; position < to; position++) {
+            insert(position);
+            count++;
+        }
+    }
+
+    private void unlink(int position, int stored) {
+        int mask = slots.length - 1;
+        int hole = spread(isbnAt.apply(position).hashCode()) & mask;
+        while (slots[hole] != stored + 1) {
+            if (slots[hole] == 0) return;
+            hole = (hole + 1) & mask;
+        }
+        // Pull later entries of the probe run back, so lookups never stop at the hole early.
+        for (int next = (hole + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = spread(isbnAt.apply(positionOf(slots[next] - 1)).hashCode()) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        slots[hole] = 0;
+        count--;
+    }
+
+    /** Writes current positions into the table and forgets the removals. Entries keep their slots. */
+    private void renumber() {
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != 0) slots[slot] = positionOf(slots[slot] - 1) + 1;
+        }
+        removedCount = 0;
+    }
+
+    private void insert(int stored) {
+        int mask = slots.length - 1;
+        int slot = spread(isbnAt.apply(positionOf(stored)).hashCode()) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = stored + 1;
+    }
+
+    /** @return The list position a number in the table stands for. */
+    private int positionOf(int stored) {
+        return removedCount == 0 ? stored : stored - rank(stored);
+    }
+
+    /** @return The number a list position is stored as. */
+    private int storedOf(int position) {
+        if (removedCount == 0) return position;
+        int stored = position + removedCount;
+        if (removed[removedCount - 1] < stored) return stored; // past every removal, e.g. an append
+        stored = position;
+        for (int i = 0; i < removedCount && removed[i] <= stored; i++) stored++;
+        return stored;
+    }
+
+    /** @return How many removals are numbered below the given stored number. */
+    private int rank(int stored) {
+        int low = 0;
+        int high = removedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (removed[middle] < stored) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /** Mixes the high bits in, since nearby ISBNs differ mostly in their last digits. */
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,312 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the catalog in an embedded, file-based SQL database through plain JDBC.
+ *
+ * Each mutation is a single-row INSERT, UPDATE or DELETE, so lending or returning a
+ * book touches one row. ISBN is the primary key. Searches run against the Library's
+ * in-memory indexes, so title and author have no database indexes to maintain.
+ * Any embedded driver works (H2 or SQLite, for example); put its jar in lib/ and set
+ * repository.jdbc.url. Nothing here needs a database server.
+ *
+ * The first time the table is created, books from the binary data file (if any)
+ * are copied in so switching backends keeps the existing catalog. The table is
+ * built under another name and renamed once the copy is committed, so a copy that
+ * fails or is cut short leaves no books table behind and is tried again on the next
+ * start. (Some databases commit schema changes at once, so a transaction alone
+ * would not do.)
+ */
+public class JdbcBookRepository implements BookRepository {
+
+    private static final String TABLE = "books";
+    private static final String IMPORT_TABLE = "books_import";
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Path seedFile;
+
+    private Connection connection;
+    private PreparedStatement insertStatement;
+    private PreparedStatement updateStatement;
+    private PreparedStatement deleteStatement;
+    private long nextPosition;
+    private long writes;
+
+    /**
+     * @param url The JDBC URL of the embedded database, e.g. jdbc:h2:./library-db.
+     * @param user The database user, or null.
+     * @param password The database password, or null.
+     * @param seedFile A binary data file to import when the table is first created.
+     */
+    public JdbcBookRepository(String url, String user, String password, Path seedFile) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.seedFile = seedFile;
+    }
+
+    @Override
+    public synchronized List<Book> loadAll() throws IOException {
+        try {
+            connection = DriverManager.getConnection(url, user, password);
+            connection.setAutoCommit(true);
+            if (!tableExists(TABLE)) createTable();
+            prepareStatements();
+
+            List<Book> books = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT position, type, isbn, title, author, publication_year, details, "
+                         + "on_loan, borrower, loan_date, due_date FROM " + TABLE + " ORDER BY position")) {
+                while (rows.next()) {
+                    nextPosition = rows.getLong(1) + 1;
+                    books.add(readBook(rows));
+                }
+            }
+            return books;
+        } catch (SQLException e) {
+            throw new IOException("Could not open book database " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void add(Book book) throws IOException {
+        try {
+            insertStatement.setLong(1, nextPosition++);
+            bindBook(insertStatement, 2, book);
+            insertStatement.executeUpdate();
+            writes++;
+        } catch (SQLException e) {
+            throw new IOException("Could not insert book " + book.getIsbn() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Inserts the whole batch in one transaction.
+     */
+    @Override
+    public synchronized void addAll(List<Book> books) throws IOException {
+        try {
+            insertBatch(insertStatement, books);
+            writes += books.size();
+        } catch (SQLException e) {
+            throw new IOException("Could not insert " + books.size() + " books: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void update(Book book) throws IOException {
+        try {
+            bindBook(updateStatement, 1, book);
+            updateStatement.setString(11, book.getIsbn());
+            updateStatement.executeUpdate();
+            writes++;
+        } catch (SQLException e) {
+            throw new IOException("Could not update book " + book.getIsbn() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String isbn) throws IOException {
+        try {
+            deleteStatement.setString(1, isbn);
+            deleteStatement.executeUpdate();
+            writes++;
+        } catch (SQLException e) {
+            throw new IOException("Could not delete book " + isbn + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Every statement is committed as it runs, so there is nothing to wait for.
+     */
+    @Override
+    public void flush() {}
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (connection != null) connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Could not close book database " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized PersistenceStats stats() {
+        return new PersistenceStats(writes, writes, writes > 0 ? 1 : 0, writes > 0 ? 1 : 0, 0);
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet tables = meta.getTables(null, null, name, null)) {
+                if (tables.next()) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the books table holding the catalog from the data file.
+     */
+    private void createTable() throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            if (tableExists(IMPORT_TABLE)) statement.executeUpdate("DROP TABLE " + IMPORT_TABLE); // an earlier copy was cut short
+            createSchema(statement, IMPORT_TABLE);
+            List<Book> existing = readDataFile();
+            if (!existing.isEmpty()) {
+                try (PreparedStatement insert = connection.prepareStatement(insertSql(IMPORT_TABLE))) {
+                    insertBatch(insert, existing);
+                }
+            }
+            statement.executeUpdate("ALTER TABLE " + IMPORT_TABLE + " RENAME TO " + TABLE);
+            if (!existing.isEmpty()) System.out.println("Copied " + existing.size() + " books from " + seedFile + " into " + url);
+        }
+    }
+
+    private static void createSchema(Statement statement, String table) throws SQLException {
+        statement.executeUpdate("CREATE TABLE " + table + " ("
+                + "isbn VARCHAR(64) NOT NULL PRIMARY KEY, "
+                + "position BIGINT NOT NULL, "
+                + "type CHAR(1) NOT NULL, "
+                + "title VARCHAR(1024), "
+                + "author VARCHAR(1024), "
+                + "publication_year INTEGER, "
+                + "details VARCHAR(1024), "
+                + "on_loan BOOLEAN NOT NULL, "
+                + "borrower VARCHAR(255), "
+                + "loan_date DATE, "
+                + "due_date DATE)");
+        statement.executeUpdate("CREATE INDEX books_position ON " + table + " (position)");
+    }
+
+    /**
+     * @return The books in the data file and its journal, or none if there is neither.
+     */
+    private List<Book> readDataFile() throws IOException {
+        if (seedFile == null || !Files.exists(seedFile) && !Files.exists(Paths.get(seedFile + ".journal"))) return List.of();
+        // Reuse the file repository so the journal and legacy formats are handled too.
+        FileBookRepository source = new FileBookRepository(seedFile.toString());
+        try {
+            return source.loadAll();
+        } catch (IOException e) {
+            throw new IOException("Could not copy " + seedFile + " into " + url + ": " + e.getMessage(), e);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Inserts books after the current last position in a single transaction.
+     * Nothing is inserted if any row fails.
+     */
+    private void insertBatch(PreparedStatement insert, List<Book> books) throws SQLException {
+        long firstPosition = nextPosition;
+        connection.setAutoCommit(false);
+        try {
+            for (Book book : books) {
+                insert.setLong(1, nextPosition++);
+                bindBook(insert, 2, book);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            insert.clearBatch();
+            connection.rollback();
+            nextPosition = firstPosition;
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void prepareStatements() throws SQLException {
+        if (insertStatement != null) return;
+        insertStatement = connection.prepareStatement(insertSql(TABLE));
+        updateStatement = connection.prepareStatement("UPDATE " + TABLE + " SET isbn = ?, type = ?, title = ?, author = ?, "
+                + "publication_year = ?, details = ?, on_loan = ?, borrower = ?, loan_date = ?, due_date = ? WHERE isbn = ?");
+        deleteStatement = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE isbn = ?");
+    }
+
+    private static String insertSql(String table) {
+        return "INSERT INTO " + table + " (position, isbn, type, title, author, "
+                + "publication_year, details, on_loan, borrower, loan_date, due_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    /**
+     * Binds the ten book columns, starting at the given parameter index.
+     */
+    private static void bindBook(PreparedStatement statement, int first, Book book) throws SQLException {
+        String type;
+        String details;
+        if (book instanceof FictionBook fb) {
+            type = "F";
+            details = fb.getGenre();
+        } else if (book instanceof NonFictionBook nfb) {
+            type = "N";
+            details = nfb.getSubject();
+        } else {
+            type = "R";
+            details = ((ReferenceBook) book).getCategory();
+        }
+        statement.setString(first, book.getIsbn());
+        statement.setString(first + 1, type);
+        statement.setString(first + 2, book.getTitle());
+        statement.setString(first + 3, book.getAuthor());
+        statement.setInt(first + 4, book.getPublicationYear());
+        statement.setString(first + 5, details);
+        statement.setBoolean(first + 6, book.isOnLoan());
+        statement.setString(first + 7, book.getBorrower());
+        setDate(statement, first + 8, book.getLoanDate());
+        setDate(statement, first + 9, book.getDueDate());
+    }
+
+    private static Book readBook(ResultSet rows) throws SQLException {
+        String isbn = rows.getString("isbn");
+        String title = rows.getString("title");
+        String author = rows.getString("author");
+        int year = rows.getInt("publication_year");
+        String details = rows.getString("details");
+        Book book = switch (rows.getString("type")) {
+            case "F" -> new FictionBook(isbn, title, author, year, details);
+            case "N" -> new NonFictionBook(isbn, title, author, year, details);
+            default -> new ReferenceBook(isbn, title, author, year, details);
+        };
+        book.setOnLoan(rows.getBoolean("on_loan"));
+        book.setBorrower(rows.getString("borrower"));
+        book.setLoanDate(toLocalDate(rows.getDate("loan_date")));
+        book.setDueDate(toLocalDate(rows.getDate("due_date")));
+        return book;
+    }
+
+    private static void setDate(PreparedStatement statement, int index, LocalDate date) throws SQLException {
+        if (date == null) {
+            statement.setNull(index, Types.DATE);
+        } else {
+            statement.setDate(index, Date.valueOf(date));
+        }
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date != null ? date.toLocalDate() : null;
+    }
+}
@@ -0,0 +1,153 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes journal records on a background thread so mutations made on the Swing
+ * event thread never wait for the disk.
+ *
+ * Records are encoded when submitted and queued. The first record after a flush
+ * schedules the next one at most {@code maxStalenessMillis} later, so a burst of
+ * changes is coalesced into a single write and a single fsync. A staleness of 0
+ * writes every record synchronously, like the original behaviour.
+ *
+ * Every append happens on the writer thread, including synchronous ones, so records
+ * reach the journal in the order they were submitted.
+ */
+class JournalWriter {
+
+    private final CatalogJournal journal;
+    private final long maxStalenessMillis;
+    private final Runnable afterFlush;
+    private final ScheduledExecutorService executor;
+
+    private final List<ByteBuffer> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    private long flushes;
+    private long mutations;
+    private int lastBatch;
+    private int largestBatch;
+
+    /**
+     * @param journal The journal to write to.
+     * @param maxStalenessMillis Longest time a mutation may wait in memory; 0 for synchronous writes.
+     * @param afterFlush Run after each successful flush: on the writer thread for a
+     *                   background write, or on the thread that called {@link #flush}
+     *                   once its write is done, so that thread never waits for it.
+     */
+    JournalWriter(CatalogJournal journal, long maxStalenessMillis, Runnable afterFlush) {
+        this.journal = journal;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.afterFlush = afterFlush;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "library-journal-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues an encoded record. Returns immediately unless the writer is synchronous.
+     * @param frame A frame from {@link CatalogJournal#encode} or {@link CatalogJournal#encodeRemove}.
+     */
+    void submit(ByteBuffer frame) {
+        if (maxStalenessMillis <= 0) {
+            synchronized (this) {
+                pending.add(frame);
+            }
+            flush();
+            return;
+        }
+        synchronized (this) {
+            pending.add(frame);
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        executor.schedule(() -> {
+            if (writePending()) afterFlush.run();
+        }, maxStalenessMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a batch of records and writes them, together with anything already
+     * pending, as one write. Blocks until they are on disk.
+     * @param frames Encoded records, in order.
+     */
+    void submitAll(List<ByteBuffer> frames) {
+        synchronized (this) {
+            pending.addAll(frames);
+        }
+        flush();
+    }
+
+    /**
+     * Blocks until every record submitted before this call is on disk.
+     */
+    void flush() {
+        Future<Boolean> done = executor.submit(this::writePending);
+        try {
+            // Run here rather than on the writer thread: a synchronous caller may hold
+            // a lock that afterFlush needs, and must not wait for it.
+            if (done.get()) afterFlush.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error flushing book data: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Stops the writer thread once the writes already queued have run. Call
+     * {@link #flush} first for anything submitted since.
+     */
+    void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return Counters describing how well mutations are being coalesced.
+     */
+    synchronized PersistenceStats stats() {
+        return new PersistenceStats(flushes, mutations, lastBatch, largestBatch, pending.size());
+    }
+
+    /**
+     * @return true if records were written.
+     */
+    private boolean writePending() {
+        List<ByteBuffer> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return false;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        try {
+            journal.appendAll(batch);
+        } catch (IOException e) {
+            System.err.println("Error saving book data: " + e.getMessage());
+            // Keep the records so the next flush retries them in their original order. Only
+            // this thread appends, so nothing newer can have been written ahead of them.
+            synchronized (this) {
+                pending.addAll(0, batch);
+            }
+            return false;
+        }
+        synchronized (this) {
+            flushes++;
+            mutations += batch.size();
+            lastBatch = batch.size();
+            largestBatch = Math.max(largestBatch, batch.size());
+        }
+        return true;
+    }
+}
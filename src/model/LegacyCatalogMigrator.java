@@ -0,0 +1,55 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * One-time conversion of data files written with Java object serialization
+ * (the format used before {@link CatalogFile}) into the binary catalog format.
+ * The original file is kept next to the new one with a ".legacy" suffix.
+ */
+final class LegacyCatalogMigrator {
+
+    private LegacyCatalogMigrator() {}
+
+    /**
+     * Converts the file in place if it is still in the legacy format.
+     * @param file The data file to check.
+     * @return true if a migration took place.
+     */
+    static boolean migrateIfNeeded(Path file) throws IOException {
+        if (!isLegacyFormat(file)) return false;
+
+        List<Book> books = readLegacy(file);
+        Path backup = file.resolveSibling(file.getFileName() + ".legacy");
+        Files.copy(file, backup, StandardCopyOption.REPLACE_EXISTING);
+        CatalogFile.writeAtomically(file, books);
+        System.out.println("Migrated " + books.size() + " books to the binary catalog format. Original kept at " + backup);
+        return true;
+    }
+
+    /**
+     * @return true if the file starts with the Java serialization stream header.
+     */
+    static boolean isLegacyFormat(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.available() >= 2 && in.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Book> readLegacy(Path file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return (List<Book>) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Legacy data file references an unknown class: " + e.getMessage(), e);
+        }
+    }
+}
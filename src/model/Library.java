@@ -1,28 +1,58 @@
 package model;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.IntFunction;
+import util.ConfigLoader;
 
 /**
  * The main model class for the Library.
- * It manages the collection of books and handles data persistence.
+ * It manages the collection of books in memory and hands every change to a
+ * {@link BookRepository} for persistence. Loans are kept in a separate
+ * {@link LoanLedger}, so lending and returning never rewrite catalog records.
  */
 public class Library {
 
     private List<Book> books;
-    private final String dataFilePath;
+    private IsbnIndex isbnIndex; // ISBN -> position in books; a MappedBookList indexes itself
+    private TrigramIndex trigramIndex; // built on the first search
+    private TextIndex textIndex; // built on the first word search
+    private CatalogColumns columns; // built on the first filter
+    private FacetIndex facets; // built on the first faceted filter
+    private DueDateIndex dueDates; // built on the first due-date query
+    private long version; // bumped by every change, so cached results can tell they are stale
+    private final BookRepository repository;
+    private final LoanLedger loans;
+    private final int maxLoansPerPatron = (int) ConfigLoader.getLongProperty("loans.maxPerPatron", 0); // 0: no limit
 
     /**
      * Constructor for the Library.
      * @param dataFilePath The path to the file where book data is stored.
      */
     public Library(String dataFilePath) {
-        this.dataFilePath = dataFilePath;
-        this.books = new CopyOnWriteArrayList<>(); // Thread-safe list for concurrent modifications
-        loadBooksFromFile();
+        this(BookRepository.fromConfig(dataFilePath), new LoanLedger(Paths.get(dataFilePath + ".loans")));
+    }
+
+    /**
+     * Creates a library backed by the given repository and loan ledger and loads its books.
+     * @param repository Where books are stored.
+     * @param loans Where loans are stored.
+     */
+    public Library(BookRepository repository, LoanLedger loans) {
+        this.repository = repository;
+        this.loans = loans;
+        loadBooks();
+        joinLoans();
+        repository.setSnapshotSource(action -> {
+            synchronized (this) {
+                action.accept(copyOfBooks());
+            }
+        });
     }
 
     /**
@@ -30,12 +60,41 @@ public class Library {
      * @param book The book to add.
      * @throws IllegalArgumentException if a book with the same ISBN already exists.
      */
-    public void addBook(Book book) {
-        if (findBookByIsbn(book.getIsbn()) != null) {
+    public synchronized void addBook(Book book) {
+        if (indexOf(book.getIsbn()) >= 0) {
             throw new IllegalArgumentException("Book with ISBN " + book.getIsbn() + " already exists.");
         }
-        books.add(book);
-        saveBooksToFile();
+        loans.applyTo(book);
+        append(book);
+        indexAdded(book);
+        version++;
+        persist(() -> repository.add(book));
+    }
+
+    /**
+     * Adds many books at once and persists them with a single repository write.
+     * Books whose ISBN is already in the library, or earlier in the batch, are skipped.
+     * @param newBooks The books to add.
+     * @return The books that were skipped because their ISBN already exists.
+     */
+    public synchronized List<Book> addBooks(List<Book> newBooks) {
+        List<Book> added = new ArrayList<>(newBooks.size());
+        List<Book> skipped = new ArrayList<>();
+        for (Book book : newBooks) {
+            if (indexOf(book.getIsbn()) >= 0) {
+                skipped.add(book);
+            } else {
+                loans.applyTo(book);
+                append(book);
+                indexAdded(book);
+                added.add(book);
+            }
+        }
+        if (!added.isEmpty()) {
+            version++;
+            persist(() -> repository.addAll(added));
+        }
+        return skipped;
     }
 
     /**
@@ -43,47 +102,190 @@ public class Library {
      * @param isbn The ISBN of the book to remove.
      * @throws IllegalArgumentException if no book with the given ISBN is found.
      */
-    public void removeBook(String isbn) {
-        Book bookToRemove = findBookByIsbn(isbn);
-        if (bookToRemove == null) {
+    public synchronized void removeBook(String isbn) {
+        int index = indexOf(isbn);
+        if (index < 0) {
             throw new IllegalArgumentException("Book with ISBN " + isbn + " not found.");
         }
-        books.remove(bookToRemove);
-        saveBooksToFile();
+        if (isbnIndex != null) isbnIndex.removeAndShift(index); // while the ISBN at index can still be read
+        Book removed = books.remove(index);
+        if (trigramIndex != null) trigramIndex.remove(isbn);
+        if (columns != null) columns.remove(index);
+        if (facets != null) facets.remove(index);
+        if (textIndex != null) textIndex.remove(removed);
+        Loan closed = loans.returnBook(isbn); // a removed book can't stay on loan
+        if (closed != null && dueDates != null) dueDates.remove(closed);
+        version++;
+        persist(() -> repository.remove(isbn));
     }
 
     /**
-     * Updates an existing book's information.
+     * Updates an existing book's catalog information.
+     * Loan fields are ignored; use {@link #lendBook} and {@link #returnBook} for those.
      * @param updatedBook The book object with updated details.
      */
-    public void updateBook(Book updatedBook) {
-        for (int i = 0; i < books.size(); i++) {
-            if (books.get(i).getIsbn().equals(updatedBook.getIsbn())) {
-                books.set(i, updatedBook);
-                saveBooksToFile();
-                return;
-            }
+    public synchronized void updateBook(Book updatedBook) {
+        int index = indexOf(updatedBook.getIsbn());
+        if (index >= 0) {
+            loans.applyTo(updatedBook);
+            Book previous = books.set(index, updatedBook);
+            if (trigramIndex != null) trigramIndex.update(updatedBook);
+            if (columns != null) columns.set(index, updatedBook);
+            if (facets != null) facets.set(index, updatedBook);
+            Loan loan = loans.getLoan(updatedBook.getIsbn());
+            if (loan != null && dueDates != null) dueDates.put(loan, updatedBook);
+            version++;
+            if (textIndex != null) textIndex.update(previous, updatedBook);
+            persist(() -> repository.update(updatedBook));
         }
     }
 
+    /**
+     * Lends a book. Only the loan ledger is written; the catalog record is untouched.
+     * @param isbn The ISBN of the book to lend.
+     * @param borrower Who is borrowing it.
+     * @param loanDate The day it is lent.
+     * @param dueDate The day it is due back.
+     * @throws IllegalArgumentException if the book doesn't exist, is already on loan or is a reference book,
+     *         no borrower is given, or the borrower already has as many books as a patron may.
+     */
+    public synchronized void lendBook(String isbn, String borrower, LocalDate loanDate, LocalDate dueDate) {
+        Book book = findBookByIsbn(isbn);
+        if (book == null) {
+            throw new IllegalArgumentException("Book with ISBN " + isbn + " not found.");
+        }
+        if (book instanceof ReferenceBook) {
+            throw new IllegalArgumentException("Reference books cannot be loaned.");
+        }
+        if (loans.getLoan(isbn) != null) {
+            throw new IllegalArgumentException("Book with ISBN " + isbn + " is already on loan.");
+        }
+        Patron patron = loans.findPatron(borrower);
+        if (maxLoansPerPatron > 0 && patron != null && loans.countLoansFor(patron) >= maxLoansPerPatron) {
+            throw new IllegalArgumentException(patron.name() + " already has " + maxLoansPerPatron + " books on loan.");
+        }
+        Loan loan = loans.lend(new Loan(isbn, borrower, loanDate, dueDate));
+        loans.applyTo(book);
+        if (dueDates != null) dueDates.put(loan, book);
+        int index = indexOf(isbn);
+        if (columns != null) columns.setOnLoan(index, true);
+        if (facets != null) facets.setOnLoan(index, true);
+        version++;
+    }
+
+    /**
+     * Returns a book. Only the loan ledger is written; the catalog record is untouched.
+     * @param isbn The ISBN of the book being returned.
+     * @throws IllegalArgumentException if the book is not on loan.
+     */
+    public synchronized void returnBook(String isbn) {
+        Loan closed = loans.returnBook(isbn);
+        if (closed == null) {
+            throw new IllegalArgumentException("Book with ISBN " + isbn + " is not on loan.");
+        }
+        if (dueDates != null) dueDates.remove(closed);
+        int index = indexOf(isbn);
+        if (index >= 0) {
+            loans.applyTo(books.get(index));
+            if (columns != null) columns.setOnLoan(index, false);
+            if (facets != null) facets.setOnLoan(index, false);
+        }
+        version++;
+    }
+
+    /**
+     * Returns the books currently on loan, found through the loan ledger rather
+     * than by scanning the catalog.
+     * @return The loaned books, in the order they were lent.
+     */
+    public synchronized List<Book> getBooksOnLoan() {
+        List<Book> onLoan = new ArrayList<>(loans.size());
+        for (Loan loan : loans.getLoans()) {
+            Book book = findBookByIsbn(loan.isbn());
+            if (book != null) onLoan.add(book);
+        }
+        return onLoan;
+    }
+
+    /**
+     * @param name A borrower's name, in any case and spacing.
+     * @return The patron registered under that name, or null if they never borrowed.
+     */
+    public synchronized Patron findPatron(String name) {
+        return loans.findPatron(name);
+    }
+
+    /**
+     * Returns what a patron has out, from the loan ledger's index by patron; the
+     * cost depends on how many books they have, not on the size of the catalog.
+     * @param patron A registered patron.
+     * @return The patron's books, in the order they were lent.
+     */
+    public synchronized List<Book> getBooksOnLoanTo(Patron patron) {
+        List<Loan> patronLoans = loans.getLoansFor(patron);
+        List<Book> onLoan = new ArrayList<>(patronLoans.size());
+        for (Loan loan : patronLoans) {
+            Book book = findBookByIsbn(loan.isbn());
+            if (book != null) onLoan.add(book);
+        }
+        return onLoan;
+    }
+
+    /**
+     * @return The most books a patron may have out at once; 0 for no limit.
+     */
+    public int getMaxLoansPerPatron() {
+        return maxLoansPerPatron;
+    }
+
+    /**
+     * Finds the books overdue on a day, from the loans sorted by due date; books not
+     * on loan are never looked at.
+     * @param asOf The day to judge by, usually today.
+     * @return The books due before that day, the longest overdue first.
+     */
+    public synchronized List<Book> getOverdueBooks(LocalDate asOf) {
+        return dueDates().overdue(asOf);
+    }
+
+    /**
+     * Finds the books due within a range of days, e.g. from today to a week ahead.
+     * @param from The first due date to include.
+     * @param to The last due date to include; {@link LocalDate#MAX} for no limit.
+     * @return The books due within those days, soonest first.
+     */
+    public synchronized List<Book> getBooksDueBetween(LocalDate from, LocalDate to) {
+        return dueDates().dueBetween(from, to);
+    }
+
+    /**
+     * Summarizes the open loans for the dashboard. The counts are kept up to date as
+     * books are lent and returned rather than counted again.
+     * @param asOf The day to judge by, usually today.
+     * @return The loans due from that day on and those overdue by then.
+     */
+    public synchronized LoanSummary getLoanSummary(LocalDate asOf) {
+        return new LoanSummary(asOf, loans.size(), dueDates().countOverdue(asOf),
+                dueDates().dueBetween(asOf, LocalDate.MAX), dueDates().overdue(asOf));
+    }
+
     /**
      * Finds a book by its ISBN.
      * @param isbn The ISBN to search for.
      * @return The Book object if found, otherwise null.
      */
-    public Book findBookByIsbn(String isbn) {
-        return books.stream()
-                .filter(book -> book.getIsbn().equals(isbn))
-                .findFirst()
-                .orElse(null);
+    public synchronized Book findBookByIsbn(String isbn) {
+        int index = indexOf(isbn);
+        return index >= 0 ? books.get(index) : null;
     }
 
     /**
      * Returns a list of all books in the library.
-     * @return A new ArrayList containing all books.
+     * @return A new list containing all books. For a mapped catalog the copy
+     *         still decodes each book only when it is first read.
      */
-    public List<Book> getAllBooks() {
-        return new ArrayList<>(books);
+    public synchronized List<Book> getAllBooks() {
+        return copyOfBooks();
     }
     
     /**
@@ -92,48 +294,312 @@ public class Library {
      * @param keyword The term to search for.
      * @return A list of books that match the keyword.
      */
-    public List<Book> searchBooks(String keyword) {
-        String lowerCaseKeyword = keyword.toLowerCase();
-        return books.stream()
-                .filter(book -> book.getTitle().toLowerCase().contains(lowerCaseKeyword) ||
-                               book.getAuthor().toLowerCase().contains(lowerCaseKeyword) ||
-                               book.getIsbn().toLowerCase().contains(lowerCaseKeyword))
-                .collect(Collectors.toList());
+    public synchronized List<Book> searchBooks(String keyword) {
+        if (books instanceof MappedBookList mapped) {
+            // A mapped catalog keeps heap use low instead, and scans the mapped text.
+            String lowerCaseKeyword = keyword.toLowerCase();
+            List<Book> hits = new ArrayList<>();
+            for (int i = 0; i < mapped.size(); i++) {
+                if (mapped.matches(i, lowerCaseKeyword)) hits.add(mapped.get(i));
+            }
+            return hits;
+        }
+        if (keyword.toLowerCase().length() < 3) {
+            return filterBooks(BookFilter.containing(keyword)); // too short for trigrams
+        }
+        if (trigramIndex == null) {
+            trigramIndex = new TrigramIndex(books);
+        }
+        return trigramIndex.search(keyword);
+    }
+
+    /**
+     * Searches like {@link #searchWords}, but also accepts a few typos per word:
+     * one edit in words of four to six letters, two in longer ones ("tolkein"
+     * finds Tolkien).
+     * @param query The words to search for.
+     * @return The matching books, closest matches first, then in catalog order.
+     */
+    public synchronized List<Book> searchFuzzy(String query) {
+        if (books instanceof MappedBookList mapped) {
+            List<String> terms = TextIndex.tokenize(query);
+            List<int[]> scored = new ArrayList<>(); // {position, total edits}
+            for (int i = 0; i < mapped.size(); i++) {
+                int edits = TextIndex.fuzzyEdits(mapped.peek(i), terms);
+                if (edits >= 0) scored.add(new int[] {i, edits});
+            }
+            scored.sort((a, b) -> Integer.compare(a[1], b[1])); // stable, so catalog order within a score
+            List<Book> hits = new ArrayList<>(scored.size());
+            for (int[] hit : scored) hits.add(mapped.get(hit[0]));
+            return hits;
+        }
+        return textIndex().searchFuzzy(query);
+    }
+
+    /**
+     * Suggests a spelling for a query whose words don't occur in the catalog,
+     * e.g. "tolkein hobit" becomes "tolkien hobbit".
+     * @param query The words that were searched for.
+     * @return The suggested query, or null if there is nothing to correct.
+     */
+    public synchronized String suggestQuery(String query) {
+        if (books instanceof MappedBookList) {
+            return null; // a mapped catalog has no word dictionary
+        }
+        return textIndex().suggest(query);
+    }
+
+    /**
+     * Starts a search session, e.g. for one search field, that reuses earlier results
+     * while the user types.
+     * @return A new session over this library.
+     */
+    public SearchSession newSearchSession() {
+        return new SearchSession(this);
     }
 
     /**
-     * Saves the current list of books to the data file using serialization.
+     * @return A number that changes whenever a book is added, removed, updated, lent or returned.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Finds the books matching every criterion of a filter, by scanning a
+     * column-oriented copy of the catalog built on first use.
+     * @param filter The criteria; null criteria match every book.
+     * @return The matching books, in catalog order.
+     */
+    public synchronized List<Book> filterBooks(BookFilter filter) {
+        int[] rows = columns().filter(filter);
+        List<Book> matches = new ArrayList<>(rows.length);
+        for (int row : rows) matches.add(books.get(row));
+        return matches;
+    }
+
+    /**
+     * Narrows books to the chosen facet values, using bitmap indexes built on first
+     * use, and counts the values of each facet among them.
+     * @param matches Books of this library to narrow, such as search results, in the
+     *                order to return them; null for the whole catalog.
+     * @param filter The facet values to keep.
+     * @return The books that remain, and for each facet how many books each of its
+     *         values would leave.
+     */
+    public synchronized FacetResult filterFacets(List<Book> matches, FacetFilter filter) {
+        int[] rows = null;
+        if (matches != null) {
+            rows = new int[matches.size()];
+            int n = 0;
+            for (Book book : matches) {
+                int index = indexOf(book.getIsbn());
+                if (index >= 0) rows[n++] = index;
+            }
+            rows = Arrays.copyOf(rows, n);
+        }
+        FacetIndex.Selection selection = facets().select(filter, rows);
+        List<Book> kept;
+        if (matches == null && selection.rows().length == books.size()) {
+            kept = copyOfBooks();
+        } else {
+            kept = new ArrayList<>(selection.rows().length);
+            for (int row : selection.rows()) kept.add(books.get(row));
+        }
+        return new FacetResult(kept, selection.counts());
+    }
+
+    /**
+     * Counts the books of each type, e.g. for the dashboard chart.
+     * @return The number of books per {@link Book#getType()} value.
+     */
+    public synchronized Map<String, Integer> countByType() {
+        return columns().countByType();
+    }
+
+    /**
+     * Searches for books by word prefixes, ignoring case and accents.
+     * Every word of the query must start a word of the title or author, or the ISBN
+     * ("tolk hob" finds "The Hobbit" by J.R.R. Tolkien).
+     * @param query The words to search for.
+     * @return A list of books that match every word, in catalog order.
+     */
+    public synchronized List<Book> searchWords(String query) {
+        if (books instanceof MappedBookList mapped) {
+            List<String> terms = TextIndex.tokenize(query);
+            List<Book> hits = new ArrayList<>();
+            for (int i = 0; i < mapped.size(); i++) {
+                if (TextIndex.matchesAll(mapped.peek(i), terms)) hits.add(mapped.get(i));
+            }
+            return hits;
+        }
+        return textIndex().search(query);
+    }
+
+    /**
+     * Rewrites the stored catalog in full and blocks until it is on disk.
+     * Day-to-day mutations don't need this; the repository persists them as they happen.
      */
-    @SuppressWarnings("unchecked")
     public void saveBooksToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(dataFilePath))) {
-            oos.writeObject(new ArrayList<>(books)); // Write a standard ArrayList
+        // Deliberately not synchronized: the repository takes the library lock itself to copy the books.
+        try {
+            repository.compact();
+        } catch (IOException e) {
+            System.err.println("Error saving book data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Blocks until every mutation made so far has been persisted.
+     * Called on shutdown; mutations otherwise reach disk within the configured staleness.
+     */
+    public void flush() {
+        try {
+            repository.flush();
+        } catch (IOException e) {
+            System.err.println("Error flushing book data: " + e.getMessage());
+        }
+        loans.flush();
+    }
+
+    /**
+     * @return How many mutations the repository has absorbed per write.
+     */
+    public PersistenceStats getPersistenceStats() {
+        return repository.stats();
+    }
+
+    /**
+     * @return How many lends and returns the loan ledger has absorbed per write.
+     */
+    public PersistenceStats getLoanPersistenceStats() {
+        return loans.stats();
+    }
+
+    /**
+     * Hands one change to the repository.
+     * Called while holding the library lock so the stored order matches the list order.
+     */
+    private void persist(RepositoryWrite write) {
+        try {
+            write.run();
         } catch (IOException e) {
             System.err.println("Error saving book data: " + e.getMessage());
             // In a real app, you might show an error dialog to the user.
         }
     }
 
+    private int indexOf(String isbn) {
+        if (books instanceof MappedBookList mapped) {
+            return mapped.indexOfIsbn(isbn);
+        }
+        return isbnIndex.find(isbn);
+    }
+
+    private void indexAdded(Book book) {
+        if (trigramIndex != null) trigramIndex.add(book);
+        if (textIndex != null) textIndex.add(book);
+        if (columns != null) columns.add(book);
+        if (facets != null) facets.add(book);
+    }
+
+    private TextIndex textIndex() {
+        if (textIndex == null) {
+            textIndex = new TextIndex(books);
+        }
+        return textIndex;
+    }
+
+    private CatalogColumns columns() {
+        if (columns == null) {
+            columns = new CatalogColumns(books.size(), bookAt());
+        }
+        return columns;
+    }
+
+    private FacetIndex facets() {
+        if (facets == null) {
+            facets = new FacetIndex(books.size(), bookAt());
+        }
+        return facets;
+    }
+
+    private DueDateIndex dueDates() {
+        if (dueDates == null) {
+            dueDates = new DueDateIndex();
+            for (Loan loan : loans.getLoans()) {
+                Book book = findBookByIsbn(loan.isbn());
+                if (book != null) dueDates.put(loan, book);
+            }
+        }
+        return dueDates;
+    }
+
+    /** Reads a mapped catalog without materializing it; loan state comes from the ledger. */
+    private IntFunction<Book> bookAt() {
+        return books instanceof MappedBookList mapped
+                ? i -> loans.applyTo(mapped.peek(i))
+                : books::get;
+    }
+
+    private void append(Book book) {
+        books.add(book);
+        if (isbnIndex != null) isbnIndex.add(books.size() - 1);
+    }
+
+    private List<Book> copyOfBooks() {
+        return books instanceof MappedBookList mapped ? mapped.snapshot() : new ArrayList<>(books);
+    }
+
+    /**
+     * Loads the list of books from the repository.
+     * If loading fails, it starts with an empty library.
+     */
+    private void loadBooks() {
+        try {
+            List<Book> loaded = repository.loadAll();
+            this.books = loaded instanceof MappedBookList ? loaded : new ArrayList<>(loaded);
+        } catch (IOException e) {
+            System.err.println("Error loading book data: " + e.getMessage());
+            // If the data is corrupt, start with a fresh list.
+            this.books = new ArrayList<>();
+        }
+        if (!(books instanceof MappedBookList)) {
+            List<Book> indexed = books;
+            isbnIndex = new IsbnIndex(position -> indexed.get(position).getIsbn());
+            isbnIndex.rebuild(0, books.size());
+        }
+    }
+
     /**
-     * Loads the list of books from the data file.
-     * If the file doesn't exist, it starts with an empty library.
+     * Makes the ledger the source of loan state. The first time a catalog is opened
+     * with a ledger, the loans recorded in the catalog move into the ledger.
+     * A mapped catalog is joined lazily, as each book is decoded.
      */
-    private void loadBooksFromFile() {
-        File dataFile = new File(dataFilePath);
-        if (dataFile.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(dataFile))) {
-                List<Book> loadedBooks = (List<Book>) ois.readObject();
-                this.books = new CopyOnWriteArrayList<>(loadedBooks);
-            } catch (FileNotFoundException e) {
-                // This case is handled by dataFile.exists(), but it's good practice to have it.
-                System.out.println("Data file not found. Starting with an empty library.");
-            } catch (IOException | ClassNotFoundException e) {
-                System.err.println("Error loading book data: " + e.getMessage());
-                // If the file is corrupt, start with a fresh list.
-                this.books = new CopyOnWriteArrayList<>();
+    private void joinLoans() {
+        if (loans.isNew()) {
+            List<Loan> existing = new ArrayList<>();
+            MappedBookList mapped = books instanceof MappedBookList m ? m : null;
+            for (int i = 0; i < books.size(); i++) {
+                Book book = mapped != null ? mapped.peek(i) : books.get(i);
+                if (book.isOnLoan()) {
+                    existing.add(new Loan(book.getIsbn(), book.getBorrower(), book.getLoanDate(), book.getDueDate()));
+                }
+            }
+            loans.seed(existing);
+        }
+        if (books instanceof MappedBookList mapped) {
+            mapped.setOnMaterialize(loans::applyTo);
+            for (int i = 0; i < mapped.size(); i++) {
+                if (mapped.rawFrame(i) == null) loans.applyTo(mapped.get(i)); // replaced by the journal
             }
         } else {
-            System.out.println("No existing data file found. A new one will be created on save.");
+            for (Book book : books) loans.applyTo(book);
         }
     }
+
+    @FunctionalInterface
+    private interface RepositoryWrite {
+        void run() throws IOException;
+    }
 }
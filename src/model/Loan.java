@@ -0,0 +1,12 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * One book currently out on loan.
+ * @param isbn The ISBN of the loaned book.
+ * @param borrower Who has the book.
+ * @param loanDate When the book was lent.
+ * @param dueDate When the book is due back.
+ */
+public record Loan(String isbn, String borrower, LocalDate loanDate, LocalDate dueDate) {}
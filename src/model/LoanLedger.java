@@ -0,0 +1,347 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import util.ConfigLoader;
+
+/**
+ * Who has which book, kept apart from the catalog.
+ *
+ * Lending or returning a book appends one small record to its own log file
+ * (books.dat.loans next to the catalog) instead of updating the book's catalog
+ * record. The ledger is the authority on loan state: the loan fields of a Book
+ * are filled in from it when the book is loaded or decoded.
+ *
+ * The ledger also registers patrons. The first loan to a new name gives it a
+ * {@link Patron} number, recorded in the log just before the loan; names that differ
+ * only in case or spacing are the same patron. Open loans are indexed by patron,
+ * so a patron's loans and how many they have are found without looking at the rest.
+ *
+ * The log is rewritten down to just the patrons and open loans once it grows to
+ * several times their size. Lend, return and patron records are all idempotent, so
+ * records still queued when that happens are simply applied again on the next load.
+ */
+public class LoanLedger {
+
+    private static final int OP_LEND = 0;
+    private static final int OP_RETURN = 1;
+    private static final int OP_PATRON = 2;
+    /** Who a catalog loan is recorded against when the catalog didn't say. */
+    static final String UNKNOWN_BORROWER = "Unknown borrower";
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+    private static final int APPROX_RECORD_BYTES = 48;
+
+    private final CatalogJournal log;
+    private final JournalWriter writer;
+    private final CatalogFile.RecordEncoder encoder = new CatalogFile.RecordEncoder();
+    private final Map<String, Loan> loansByIsbn = new HashMap<>();
+    private final List<Patron> patrons = new ArrayList<>(); // patron #n at n - 1
+    private final Map<String, Patron> patronsByName = new HashMap<>(); // by folded name
+    private final Map<Integer, Set<String>> isbnsByPatron = new HashMap<>();
+    private final boolean existed;
+
+    /**
+     * Opens the ledger and replays its log.
+     * @param path The loan log file; created on first write if missing.
+     */
+    public LoanLedger(Path path) {
+        this(path, ConfigLoader.getLongProperty("persistence.maxStalenessMillis", 500));
+    }
+
+    /**
+     * @param path The loan log file; created on first write if missing.
+     * @param maxStalenessMillis Longest time a lend or return may wait in memory; 0 writes each one immediately.
+     */
+    LoanLedger(Path path, long maxStalenessMillis) {
+        this.log = new CatalogJournal(path);
+        this.existed = Files.exists(path);
+        try {
+            CatalogJournal.replayFrames(path, this::apply);
+        } catch (IOException e) {
+            System.err.println("Error loading loan data: " + e.getMessage());
+        }
+        this.writer = new JournalWriter(log, maxStalenessMillis, this::compactIfNeeded);
+    }
+
+    /**
+     * @return true if there was no ledger file yet, i.e. loan state still lives only in the catalog.
+     */
+    boolean isNew() {
+        return !existed;
+    }
+
+    /**
+     * Takes over the loan state stored in catalog records. Used once, when a catalog
+     * from before the ledger is opened for the first time. A loan without a borrower's
+     * name is kept under {@link #UNKNOWN_BORROWER}, so the book stays on loan.
+     * @param loans The loans found in the catalog.
+     */
+    synchronized void seed(List<Loan> loans) {
+        for (Loan loan : loans) {
+            boolean named = loan.borrower() != null && !loan.borrower().isBlank();
+            put(named ? loan : new Loan(loan.isbn(), UNKNOWN_BORROWER, loan.loanDate(), loan.dueDate()));
+        }
+        try {
+            log.rewrite(snapshotFrames());
+        } catch (IOException e) {
+            System.err.println("Error saving loan data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a new loan. A borrower not seen before is registered as a patron first.
+     * @param loan The loan; replaces any existing loan of the same ISBN.
+     * @return The loan as recorded, with the borrower's name as the patron was registered.
+     * @throws IllegalArgumentException if the loan has no borrower.
+     */
+    public synchronized Loan lend(Loan loan) {
+        if (loan.borrower() == null || loan.borrower().isBlank()) {
+            throw new IllegalArgumentException("A borrower's name is required.");
+        }
+        Patron patron = register(loan.borrower());
+        Loan recorded = new Loan(loan.isbn(), patron.name(), loan.loanDate(), loan.dueDate());
+        put(recorded);
+        writer.submit(encode(OP_LEND, recorded.isbn(), recorded));
+        return recorded;
+    }
+
+    /**
+     * Records that a book came back.
+     * @param isbn The ISBN of the returned book.
+     * @return The loan that was closed, or null if the book wasn't on loan.
+     */
+    public synchronized Loan returnBook(String isbn) {
+        Loan loan = remove(isbn);
+        if (loan != null) writer.submit(encode(OP_RETURN, isbn, null));
+        return loan;
+    }
+
+    /**
+     * @param isbn The ISBN of a book.
+     * @return The book's open loan, or null if it is available.
+     */
+    public synchronized Loan getLoan(String isbn) {
+        return loansByIsbn.get(isbn);
+    }
+
+    /**
+     * @return Every open loan.
+     */
+    public synchronized List<Loan> getLoans() {
+        return new ArrayList<>(loansByIsbn.values());
+    }
+
+    /**
+     * @param patron A registered patron.
+     * @return The patron's open loans, in the order they were lent.
+     */
+    public synchronized List<Loan> getLoansFor(Patron patron) {
+        Set<String> isbns = isbnsByPatron.getOrDefault(patron.id(), Collections.emptySet());
+        List<Loan> loans = new ArrayList<>(isbns.size());
+        for (String isbn : isbns) loans.add(loansByIsbn.get(isbn));
+        return loans;
+    }
+
+    /**
+     * @param patron A registered patron.
+     * @return How many books the patron has out.
+     */
+    public synchronized int countLoansFor(Patron patron) {
+        Set<String> isbns = isbnsByPatron.get(patron.id());
+        return isbns != null ? isbns.size() : 0;
+    }
+
+    /**
+     * @param name A borrower's name, in any case and spacing.
+     * @return The patron registered under that name, or null if they never borrowed.
+     */
+    public synchronized Patron findPatron(String name) {
+        return name != null ? patronsByName.get(fold(name)) : null;
+    }
+
+    /**
+     * @param id A patron number.
+     * @return The patron with that number, or null if there is none.
+     */
+    private Patron getPatron(int id) {
+        return id >= 1 && id <= patrons.size() ? patrons.get(id - 1) : null;
+    }
+
+    /**
+     * @return Every registered patron, by number.
+     */
+    public synchronized List<Patron> getPatrons() {
+        List<Patron> registered = new ArrayList<>(patrons.size());
+        for (Patron patron : patrons) {
+            if (patron != null) registered.add(patron); // a number lost with a damaged record
+        }
+        return registered;
+    }
+
+    /**
+     * @return The number of open loans.
+     */
+    public synchronized int size() {
+        return loansByIsbn.size();
+    }
+
+    /**
+     * Joins the ledger onto a catalog book: sets its loan fields from the open loan,
+     * or clears them if the book is not on loan.
+     * @param book The book to update.
+     * @return The same book.
+     */
+    public synchronized Book applyTo(Book book) {
+        Loan loan = loansByIsbn.get(book.getIsbn());
+        book.setOnLoan(loan != null);
+        book.setBorrower(loan != null ? loan.borrower() : null);
+        book.setLoanDate(loan != null ? loan.loanDate() : null);
+        book.setDueDate(loan != null ? loan.dueDate() : null);
+        return book;
+    }
+
+    /**
+     * Blocks until every lend and return so far is on disk.
+     */
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * @return Counters describing how lend and return records are being batched.
+     */
+    public PersistenceStats stats() {
+        return writer.stats();
+    }
+
+    /** Finds or registers the patron for a name, logging a new one ahead of its loan. */
+    private Patron register(String name) {
+        Patron patron = findPatron(name);
+        if (patron == null) {
+            patron = addPatron(patrons.size() + 1, name.trim());
+            writer.submit(encodePatron(patron));
+        }
+        return patron;
+    }
+
+    private Patron addPatron(int id, String name) {
+        Patron patron = new Patron(id, name);
+        while (patrons.size() < id) patrons.add(null);
+        patrons.set(id - 1, patron);
+        patronsByName.put(fold(name), patron);
+        return patron;
+    }
+
+    private static String fold(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void put(Loan loan) {
+        remove(loan.isbn());
+        loansByIsbn.put(loan.isbn(), loan);
+        // Loans logged before patrons were registered get their number on replay, in log order.
+        Patron patron = findPatron(loan.borrower());
+        if (patron == null) patron = addPatron(patrons.size() + 1, loan.borrower().trim());
+        isbnsByPatron.computeIfAbsent(patron.id(), id -> new LinkedHashSet<>()).add(loan.isbn());
+    }
+
+    private Loan remove(String isbn) {
+        Loan loan = loansByIsbn.remove(isbn);
+        if (loan != null) {
+            int id = findPatron(loan.borrower()).id();
+            Set<String> isbns = isbnsByPatron.get(id);
+            isbns.remove(isbn);
+            if (isbns.isEmpty()) isbnsByPatron.remove(id);
+        }
+        return loan;
+    }
+
+    /**
+     * Runs after each flush. The ledger is held until the log has been rewritten, so no
+     * record newer than the snapshot can be appended in between; older ones still
+     * queued are written after it and applied again harmlessly.
+     */
+    private synchronized void compactIfNeeded() {
+        try {
+            long size = log.size();
+            if (size < MIN_COMPACTION_BYTES || size < 4L * APPROX_RECORD_BYTES * (loansByIsbn.size() + patrons.size())) return;
+            log.rewrite(snapshotFrames());
+        } catch (IOException e) {
+            System.err.println("Error compacting loan data: " + e.getMessage());
+        }
+    }
+
+    private List<ByteBuffer> snapshotFrames() {
+        List<ByteBuffer> frames = new ArrayList<>(patrons.size() + loansByIsbn.size());
+        for (Patron patron : getPatrons()) frames.add(encodePatron(patron));
+        for (Loan loan : loansByIsbn.values()) frames.add(encode(OP_LEND, loan.isbn(), loan));
+        return frames;
+    }
+
+    private ByteBuffer encode(int op, String isbn, Loan loan) {
+        try {
+            encoder.begin();
+            encoder.out().writeByte(op);
+            BookRecords.writeString(encoder.out(), isbn);
+            if (op == OP_LEND) {
+                BookRecords.writeString(encoder.out(), loan.borrower());
+                writeDate(loan.loanDate());
+                writeDate(loan.dueDate());
+            }
+            return CatalogJournal.copy(encoder.seal());
+        } catch (IOException e) {
+            // Writing to an in-memory buffer can't fail.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ByteBuffer encodePatron(Patron patron) {
+        try {
+            encoder.begin();
+            encoder.out().writeByte(OP_PATRON);
+            BookRecords.writeVarInt(encoder.out(), patron.id());
+            BookRecords.writeString(encoder.out(), patron.name());
+            return CatalogJournal.copy(encoder.seal());
+        } catch (IOException e) {
+            // Writing to an in-memory buffer can't fail.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Dates are stored as epoch day + 1, with 0 meaning no date. */
+    private void writeDate(LocalDate date) throws IOException {
+        BookRecords.writeVarInt(encoder.out(), date != null ? (int) date.toEpochDay() + 1 : 0);
+    }
+
+    private static LocalDate readDate(ByteBuffer in) throws IOException {
+        int value = BookRecords.readVarInt(in);
+        return value != 0 ? LocalDate.ofEpochDay(value - 1L) : null;
+    }
+
+    private void apply(ByteBuffer payload) throws IOException {
+        int op = payload.get();
+        if (op == OP_PATRON) {
+            int id = BookRecords.readVarInt(payload);
+            String name = BookRecords.readString(payload);
+            if (getPatron(id) == null) addPatron(id, name);
+            return;
+        }
+        String isbn = BookRecords.readString(payload);
+        if (op == OP_LEND) {
+            put(new Loan(isbn, BookRecords.readString(payload), readDate(payload), readDate(payload)));
+        } else {
+            remove(isbn);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The open loans as of one day, for the dashboard.
+ * @param asOf The day the loans were judged by.
+ * @param onLoan The number of books on loan.
+ * @param overdue The number of books due before that day.
+ * @param dueBooks The books due on or after that day, soonest first.
+ * @param overdueBooks The books due before that day, the longest overdue first.
+ */
+public record LoanSummary(LocalDate asOf, int onLoan, int overdue, List<Book> dueBooks, List<Book> overdueBooks) {
+
+    /** No loans at all. */
+    public static final LoanSummary NONE = new LoanSummary(LocalDate.now(), 0, 0, List.of(), List.of());
+}
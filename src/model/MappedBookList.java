@@ -0,0 +1,163 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * The Library's book list when the catalog is memory-mapped.
+ *
+ * Each position holds either a record number in the {@link MappedCatalog} or a Book
+ * that was added or replaced after the file was opened. Records are only decoded
+ * when {@link #get(int)} reaches them. Base records always stay in file order
+ * ahead of books added later, which lets ISBN lookups binary-search the positions.
+ */
+final class MappedBookList extends AbstractList<Book> implements RandomAccess {
+
+    private static final int DETACHED = -1;
+
+    private final MappedCatalog catalog;
+    private int[] records;
+    private Book[] overrides;
+    private int size;
+    private int baseCount; // positions [0, baseCount) still refer to catalog records
+    private final IsbnIndex appendedIndex = new IsbnIndex(position -> overrides[position].getIsbn());
+
+    MappedBookList(MappedCatalog catalog) {
+        this.catalog = catalog;
+        this.size = catalog.size();
+        this.baseCount = size;
+        this.records = new int[Math.max(16, size)];
+        this.overrides = new Book[records.length];
+        for (int i = 0; i < size; i++) records[i] = i;
+    }
+
+    private MappedBookList(MappedBookList source) {
+        this.catalog = source.catalog;
+        this.size = source.size;
+        this.baseCount = source.baseCount;
+        this.records = Arrays.copyOf(source.records, source.size);
+        this.overrides = Arrays.copyOf(source.overrides, source.size);
+        appendedIndex.rebuild(baseCount, size);
+    }
+
+    /**
+     * @return An independent copy of the current contents that still decodes lazily.
+     */
+    MappedBookList snapshot() {
+        return new MappedBookList(this);
+    }
+
+    @Override
+    public Book get(int index) {
+        checkIndex(index);
+        Book override = overrides[index];
+        return override != null ? override : catalog.book(records[index]);
+    }
+
+    /**
+     * Reads the book at a position without keeping a decoded copy around, for one-off passes.
+     * @return The book as stored (or as replaced in memory).
+     */
+    Book peek(int index) {
+        checkIndex(index);
+        Book override = overrides[index];
+        return override != null ? override : catalog.decode(records[index]);
+    }
+
+    /**
+     * @param action Applied to each base record's book when it is first decoded.
+     */
+    void setOnMaterialize(Consumer<Book> action) {
+        catalog.setOnMaterialize(action);
+    }
+
+    @Override
+    public Book set(int index, Book book) {
+        Book previous = get(index);
+        overrides[index] = book;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Book book) {
+        if (index != size) {
+            throw new UnsupportedOperationException("Books can only be appended to a mapped catalog.");
+        }
+        if (size == records.length) {
+            records = Arrays.copyOf(records, size + (size >> 1) + 1);
+            overrides = Arrays.copyOf(overrides, records.length);
+        }
+        records[size] = DETACHED;
+        overrides[size] = book;
+        appendedIndex.add(size);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Book remove(int index) {
+        Book previous = get(index);
+        int tail = size - index - 1;
+        System.arraycopy(records, index + 1, records, index, tail);
+        System.arraycopy(overrides, index + 1, overrides, index, tail);
+        size--;
+        overrides[size] = null;
+        if (index < baseCount) baseCount--;
+        appendedIndex.rebuild(baseCount, size); // appended positions have shifted
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the position of a book by ISBN, decoding at most the one record that matches.
+     * @param isbn The ISBN to look up.
+     * @return The position, or -1 if not present.
+     */
+    int indexOfIsbn(String isbn) {
+        int record = catalog.find(isbn);
+        if (record >= 0) {
+            int position = Arrays.binarySearch(records, 0, baseCount, record);
+            if (position >= 0) return position;
+        }
+        return appendedIndex.find(isbn);
+    }
+
+    /**
+     * Same test as Library.searchBooks, but answered from the mapped bytes for
+     * positions that haven't been materialized yet.
+     */
+    boolean matches(int index, String lowerCaseKeyword) {
+        Book override = overrides[index];
+        if (override == null && !catalog.isMaterialized(records[index])) {
+            return catalog.textContains(records[index], lowerCaseKeyword);
+        }
+        Book book = get(index);
+        return book.getTitle().toLowerCase().contains(lowerCaseKeyword)
+                || book.getAuthor().toLowerCase().contains(lowerCaseKeyword)
+                || book.getIsbn().toLowerCase().contains(lowerCaseKeyword);
+    }
+
+    /**
+     * @return The untouched on-disk frame for this position, or null if the book was
+     *         replaced or materialized (and so may have been modified in memory).
+     */
+    ByteBuffer rawFrame(int index) {
+        checkIndex(index);
+        if (overrides[index] != null || catalog.isMaterialized(records[index])) return null;
+        return catalog.rawFrame(records[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
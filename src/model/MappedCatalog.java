@@ -0,0 +1,232 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only, memory-mapped view of a catalog file written by {@link CatalogFile}.
+ *
+ * Opening only walks the frame headers to build an offset table and an ISBN hash
+ * index; no Book is created until {@link #book(int)} asks for one. Heap use at
+ * open is a few ints per record, regardless of how long titles and authors are.
+ *
+ * Note: while a file is mapped, Windows refuses to replace it, so mapped loading
+ * is opt-in (see Library) rather than the default.
+ */
+final class MappedCatalog {
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int[] payloadOffsets;
+    private final int[] isbnSlots; // open addressing: record number + 1, 0 = empty
+    private final Book[] materialized;
+    private volatile Consumer<Book> onMaterialize = book -> {};
+
+    private MappedCatalog(Path file, MappedByteBuffer buffer, int[] payloadOffsets) {
+        this.file = file;
+        this.buffer = buffer;
+        this.payloadOffsets = payloadOffsets;
+        this.materialized = new Book[payloadOffsets.length];
+        this.isbnSlots = new int[Math.max(16, Integer.highestOneBit(Math.max(1, payloadOffsets.length)) << 2)];
+        for (int record = 0; record < payloadOffsets.length; record++) {
+            int slot = hash(buffer, isbnOffset(record), isbnLength(record)) & (isbnSlots.length - 1);
+            while (isbnSlots[slot] != 0) slot = (slot + 1) & (isbnSlots.length - 1);
+            isbnSlots[slot] = record + 1;
+        }
+    }
+
+    /**
+     * Maps the file and indexes its records. Frames with a bad checksum are left out.
+     * @param file A catalog file.
+     * @return The opened catalog.
+     */
+    static MappedCatalog open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map in one piece.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer header = buffer.duplicate();
+        int count = CatalogFile.readHeader(header, file);
+
+        int[] offsets = new int[count];
+        int valid = 0;
+        int skipped = 0;
+        int position = CatalogFile.HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < count; i++) {
+            if (position + CatalogFile.FRAME_HEADER_BYTES > buffer.limit()) {
+                throw new IOException("Unexpected end of catalog file " + file);
+            }
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            int payload = position + CatalogFile.FRAME_HEADER_BYTES;
+            if (length < 0 || payload + length > buffer.limit()) {
+                throw new IOException("Corrupt record length " + length + " in " + file);
+            }
+            crc.reset();
+            crc.update(buffer.duplicate().position(payload).limit(payload + length));
+            if ((int) crc.getValue() == checksum) {
+                offsets[valid++] = payload;
+            } else {
+                skipped++;
+            }
+            position = payload + length;
+        }
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " damaged record(s) in " + file);
+        }
+        return new MappedCatalog(file, buffer, valid == count ? offsets : Arrays.copyOf(offsets, valid));
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * @return The number of intact records in the file.
+     */
+    int size() {
+        return payloadOffsets.length;
+    }
+
+    /**
+     * Finds the record holding the given ISBN without decoding any record.
+     * @param isbn The ISBN to look up.
+     * @return The record number, or -1 if the file has no such ISBN.
+     */
+    int find(String isbn) {
+        byte[] key = isbn.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(ByteBuffer.wrap(key), 0, key.length) & (isbnSlots.length - 1);
+        while (isbnSlots[slot] != 0) {
+            int record = isbnSlots[slot] - 1;
+            if (isbnEquals(record, key)) return record;
+            slot = (slot + 1) & (isbnSlots.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a record into a Book the first time it's requested and caches it,
+     * so every caller sees the same instance.
+     * @param record The record number.
+     * @return The book stored in that record.
+     */
+    synchronized Book book(int record) {
+        Book book = materialized[record];
+        if (book == null) {
+            book = decode(record);
+            onMaterialize.accept(book);
+            materialized[record] = book;
+        }
+        return book;
+    }
+
+    /**
+     * Decodes a record into a new Book without caching it.
+     * @param record The record number.
+     * @return A fresh copy of the stored book, exactly as written.
+     */
+    Book decode(int record) {
+        try {
+            return BookRecords.read(payload(record));
+        } catch (IOException e) {
+            // The checksum was verified at open, so this only happens if the file changed underneath us.
+            throw new IllegalStateException("Catalog record " + record + " is unreadable: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param action Applied to every book when it is first decoded, before anyone sees it.
+     */
+    void setOnMaterialize(Consumer<Book> action) {
+        this.onMaterialize = action;
+    }
+
+    /**
+     * @return true if the record has already been turned into a Book.
+     */
+    synchronized boolean isMaterialized(int record) {
+        return materialized[record] != null;
+    }
+
+    /**
+     * Case-insensitive substring test against the record's title, author and ISBN,
+     * decoding only those three strings. Mirrors Library.searchBooks.
+     * @param record The record number.
+     * @param lowerCaseKeyword The keyword, already lower-cased.
+     */
+    boolean textContains(int record, String lowerCaseKeyword) {
+        try {
+            ByteBuffer in = payload(record);
+            in.get(); // type tag
+            String isbn = BookRecords.readString(in);
+            String title = BookRecords.readString(in);
+            String author = BookRecords.readString(in);
+            return title.toLowerCase().contains(lowerCaseKeyword)
+                    || author.toLowerCase().contains(lowerCaseKeyword)
+                    || isbn.toLowerCase().contains(lowerCaseKeyword);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The record's complete frame (header and payload), for copying into a new snapshot as-is.
+     */
+    ByteBuffer rawFrame(int record) {
+        int payload = payloadOffsets[record];
+        int length = buffer.getInt(payload - CatalogFile.FRAME_HEADER_BYTES);
+        return buffer.duplicate().position(payload - CatalogFile.FRAME_HEADER_BYTES).limit(payload + length).slice();
+    }
+
+    private ByteBuffer payload(int record) {
+        int payload = payloadOffsets[record];
+        int length = buffer.getInt(payload - CatalogFile.FRAME_HEADER_BYTES);
+        return buffer.duplicate().position(payload).limit(payload + length).slice();
+    }
+
+    private boolean isbnEquals(int record, byte[] key) {
+        int length = isbnLength(record);
+        if (length != key.length) return false;
+        int offset = isbnOffset(record);
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    /** The ISBN is the first string of the payload, right after the one-byte type tag. */
+    private int isbnOffset(int record) {
+        int position = payloadOffsets[record] + 1;
+        while ((buffer.get(position) & 0x80) != 0) position++;
+        return position + 1;
+    }
+
+    private int isbnLength(int record) {
+        try {
+            ByteBuffer in = buffer.duplicate().position(payloadOffsets[record] + 1);
+            return BookRecords.readVarInt(in) - 1;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static int hash(ByteBuffer bytes, int offset, int length) {
+        int h = 0x811C9DC5; // FNV-1a
+        for (int i = 0; i < length; i++) {
+            h = (h ^ (bytes.get(offset + i) & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,14 @@
+package model;
+
+/**
+ * Someone who borrows books.
+ * @param id The patron's number, assigned when they first borrow and never reused.
+ * @param name The name as first entered; later entries match it regardless of case and spacing.
+ */
+public record Patron(int id, String name) {
+
+    @Override
+    public String toString() {
+        return name + " (#" + id + ")";
+    }
+}
@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * A point-in-time view of the background journal writer's counters.
+ * @param flushes Number of writes to the journal so far.
+ * @param mutations Number of mutations those writes contained.
+ * @param lastBatch Mutations absorbed by the most recent flush.
+ * @param largestBatch Most mutations absorbed by a single flush.
+ * @param pending Mutations waiting for the next flush.
+ */
+public record PersistenceStats(long flushes, long mutations, int lastBatch, int largestBatch, int pending) {
+
+    /**
+     * @return The average number of mutations absorbed per flush.
+     */
+    public double averageBatch() {
+        return flushes == 0 ? 0 : (double) mutations / flushes;
+    }
+}
@@ -0,0 +1,129 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of row numbers, laid out the way Roaring bitmaps are.
+ *
+ * Rows are grouped into blocks of 65,536 by their high bits. A block keeps the
+ * sorted low 16 bits of its rows, two bytes each, while it holds at most 4,096 of
+ * them, and switches to a plain 8 KiB bitmap beyond that. A rare value therefore
+ * costs a few bytes per row and a common one at most a bit per row, where a BitSet
+ * would cost a bit per row of the catalog for every value.
+ *
+ * Sets are combined by OR-ing them into, or counting them against, a dense scratch
+ * bitmap of the whole catalog, one long per 64 rows.
+ */
+final class RowBitmap {
+
+    private static final int BLOCK_BITS = 16;
+    private static final int WORDS_PER_BLOCK = (1 << BLOCK_BITS) / Long.SIZE;
+    private static final int MAX_ARRAY = 4096;
+
+    private char[][] arrays = new char[0][]; // per block: sorted low bits, until the block is dense
+    private long[][] bitmaps = new long[0][]; // per block: the bits, once it is
+    private int[] counts = new int[0];
+    private int cardinality;
+
+    void add(int row) {
+        int block = row >>> BLOCK_BITS;
+        if (block >= counts.length) grow(block + 1);
+        char low = (char) row;
+        long[] bits = bitmaps[block];
+        if (bits != null) {
+            if ((bits[low >>> 6] & (1L << low)) != 0) return;
+            bits[low >>> 6] |= 1L << low;
+            counts[block]++;
+            cardinality++;
+            return;
+        }
+        char[] values = arrays[block];
+        int count = counts[block];
+        // Rows mostly arrive in ascending order, so check the end before searching.
+        int at = count == 0 || values[count - 1] < low ? count : Arrays.binarySearch(values, 0, count, low);
+        if (at < 0) {
+            at = -at - 1;
+        } else if (at < count) {
+            return; // already present
+        }
+        if (count == MAX_ARRAY) {
+            toBitmap(block);
+            add(row);
+            return;
+        }
+        if (values == null || count == values.length) {
+            values = arrays[block] = Arrays.copyOf(values != null ? values : new char[0], Math.max(4, count * 2));
+        }
+        System.arraycopy(values, at, values, at + 1, count - at);
+        values[at] = low;
+        counts[block]++;
+        cardinality++;
+    }
+
+    void remove(int row) {
+        int block = row >>> BLOCK_BITS;
+        if (block >= counts.length) return;
+        char low = (char) row;
+        long[] bits = bitmaps[block];
+        if (bits != null) {
+            if ((bits[low >>> 6] & (1L << low)) == 0) return;
+            bits[low >>> 6] &= ~(1L << low);
+        } else {
+            int at = counts[block] == 0 ? -1 : Arrays.binarySearch(arrays[block], 0, counts[block], low);
+            if (at < 0) return;
+            System.arraycopy(arrays[block], at + 1, arrays[block], at, counts[block] - at - 1);
+        }
+        counts[block]--;
+        cardinality--;
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    /** Sets the bits of this set's rows in a dense bitmap of the catalog. */
+    void orInto(long[] words) {
+        for (int block = 0; block < counts.length; block++) {
+            if (counts[block] == 0) continue;
+            int base = block * WORDS_PER_BLOCK;
+            if (bitmaps[block] != null) {
+                int end = Math.min(WORDS_PER_BLOCK, words.length - base);
+                for (int i = 0; i < end; i++) words[base + i] |= bitmaps[block][i];
+            } else {
+                char[] values = arrays[block];
+                for (int i = 0; i < counts[block]; i++) words[base + (values[i] >>> 6)] |= 1L << values[i];
+            }
+        }
+    }
+
+    /** Counts this set's rows whose bit is set in a dense bitmap of the catalog. */
+    int andCardinality(long[] words) {
+        int total = 0;
+        for (int block = 0; block < counts.length; block++) {
+            if (counts[block] == 0) continue;
+            int base = block * WORDS_PER_BLOCK;
+            if (bitmaps[block] != null) {
+                int end = Math.min(WORDS_PER_BLOCK, words.length - base);
+                for (int i = 0; i < end; i++) total += Long.bitCount(words[base + i] & bitmaps[block][i]);
+            } else {
+                char[] values = arrays[block];
+                for (int i = 0; i < counts[block]; i++) total += (int) (words[base + (values[i] >>> 6)] >>> values[i]) & 1;
+            }
+        }
+        return total;
+    }
+
+    private void grow(int blocks) {
+        arrays = Arrays.copyOf(arrays, blocks);
+        bitmaps = Arrays.copyOf(bitmaps, blocks);
+        counts = Arrays.copyOf(counts, blocks);
+    }
+
+    private void toBitmap(int block) {
+        long[] bits = new long[WORDS_PER_BLOCK];
+        char[] values = arrays[block];
+        for (int i = 0; i < counts[block]; i++) bits[values[i] >>> 6] |= 1L << values[i];
+        bitmaps[block] = bits;
+        arrays[block] = null;
+    }
+}
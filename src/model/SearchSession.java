@@ -0,0 +1,101 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers {@link Library#searchBooks} for one search field as the user types.
+ *
+ * Recent results are kept in a small LRU cache keyed by the lower-cased keyword,
+ * so deleting characters returns to an earlier result at once. When the keyword
+ * grows, the new result is a subset of the result of any cached keyword it
+ * contains, so the smallest such result is narrowed instead of searching the
+ * whole catalog. The cache remembers the library version it was filled at and
+ * is emptied when the library changes.
+ */
+public class SearchSession {
+
+    private static final int MAX_CACHED_QUERIES = 32;
+    /** Short keywords match most of the catalog, so the cache is bounded by size too. */
+    private static final long MAX_CACHED_BOOKS = 1_000_000;
+    /** Narrowing re-checks each earlier hit; beyond this many, the indexed search is cheaper. */
+    private static final int MAX_NARROWED_RESULTS = 2_000;
+
+    private final Library library;
+    private final Map<String, List<Book>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBooks;
+    private long cachedVersion = -1;
+    private int hits;
+    private int narrowed;
+    private int searched;
+
+    SearchSession(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Searches the library, reusing earlier results of this session where possible.
+     * @param keyword The term to search for.
+     * @return The books whose title, author or ISBN contains the keyword, ignoring
+     *         case, in catalog order. The list must not be modified.
+     */
+    public synchronized List<Book> search(String keyword) {
+        String lowerCaseKeyword = keyword.toLowerCase();
+        // Read the version first: a change during the search then empties the cache next time.
+        long version = library.getVersion();
+        if (version != cachedVersion) {
+            cache.clear();
+            cachedBooks = 0;
+            cachedVersion = version;
+        }
+
+        List<Book> results = cache.get(lowerCaseKeyword);
+        if (results != null) {
+            hits++;
+            return results;
+        }
+
+        List<Book> base = null;
+        for (Map.Entry<String, List<Book>> entry : cache.entrySet()) {
+            if (lowerCaseKeyword.contains(entry.getKey()) && (base == null || entry.getValue().size() < base.size())) {
+                base = entry.getValue();
+            }
+        }
+        if (base != null && base.size() <= MAX_NARROWED_RESULTS) {
+            results = new ArrayList<>();
+            for (Book book : base) {
+                if (TrigramIndex.matches(book, lowerCaseKeyword)) results.add(book);
+            }
+            narrowed++;
+        } else {
+            results = library.searchBooks(keyword);
+            searched++;
+        }
+        results = Collections.unmodifiableList(results);
+        cache.put(lowerCaseKeyword, results);
+        cachedBooks += results.size();
+        evict();
+        return results;
+    }
+
+    /** Drops least recently used results, but always keeps the newest. */
+    private void evict() {
+        Iterator<List<Book>> eldestFirst = cache.values().iterator();
+        while (cache.size() > 1 && (cache.size() > MAX_CACHED_QUERIES || cachedBooks > MAX_CACHED_BOOKS)) {
+            cachedBooks -= eldestFirst.next().size();
+            eldestFirst.remove();
+        }
+    }
+
+    /**
+     * @return How the session's searches were answered, for diagnostics.
+     */
+    @Override
+    public synchronized String toString() {
+        return "SearchSession[cached=" + hits + ", narrowed=" + narrowed + ", searched=" + searched + "]";
+    }
+}
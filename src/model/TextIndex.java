@@ -0,0 +1,589 @@
+package model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An inverted index over the title, author and ISBN of every book.
+ *
+ * Titles and authors are folded (lower case, accents removed) and split into words;
+ * each word maps to a sorted posting list of document ids. ISBNs, which are unique
+ * and would swamp the word dictionary, are kept instead as one array of documents
+ * sorted by ISBN. Document ids are handed out in catalog order and kept when a book
+ * is updated, so results come back in catalog order without sorting.
+ *
+ * A query matches books that contain, for every query word, some word starting with
+ * it, or whose ISBN starts with it ("tolk hob" finds "The Hobbit" by Tolkien; "97802"
+ * finds ISBN 9780261102217). The word with the fewest postings supplies the candidates;
+ * the others are intersected, or checked against the candidate's own text when that
+ * is cheaper.
+ *
+ * Books are edited in place, so the words an updated book used to have can't be
+ * recomputed. Its old postings are left behind and the document is marked dirty,
+ * which makes every hit on it re-check the current text. Removed documents leave
+ * a hole. Once enough of either piles up, the index is rebuilt.
+ */
+final class TextIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final int MIN_REBUILD_WASTE = 1024;
+    private static final int MAX_UNSORTED_ISBNS = 4096;
+    private static final int VERIFY_INSTEAD_OF_INTERSECT = 4;
+    private static final int MAX_CACHED_LOOKUPS = 16;
+
+    private final Map<String, Postings> dictionary = new HashMap<>();
+    private String[] sortedWords; // the dictionary's keys in order, rebuilt when a word is added
+    // Recent similar-word lookups, since a fuzzy search is usually followed by a suggestion for the same words
+    private final Map<String, List<WordMatch>> similarByTerm = new HashMap<>();
+
+    private Book[] docs = new Book[16];
+    private String[] isbnKeys = new String[16];
+    private int nextDoc;
+    private int live;
+    private int[] byIsbn = new int[0]; // documents sorted by ISBN key ...
+    private int sortedIsbns;          // ... up to here; later documents are in id order
+
+    private final BitSet dirty = new BitSet();
+    private int removed;
+
+    /**
+     * Creates an index over the given books, in catalog order.
+     */
+    TextIndex(List<Book> books) {
+        for (Book book : books) add(book);
+    }
+
+    /**
+     * Indexes a book added at the end of the catalog.
+     */
+    void add(Book book) {
+        if (nextDoc == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+            isbnKeys = Arrays.copyOf(isbnKeys, docs.length);
+        }
+        int doc = nextDoc++;
+        docs[doc] = book;
+        isbnKeys[doc] = isbnKey(book.getIsbn());
+        live++;
+        for (String word : words(book)) postingsFor(word).add(doc);
+    }
+
+    /**
+     * Re-indexes a book whose text may have changed, keeping its place in the catalog.
+     * @param previous The instance that was in the catalog (may be the same object).
+     * @param current The book as it is now, with the same ISBN.
+     */
+    void update(Book previous, Book current) {
+        int doc = docOf(previous);
+        if (doc < 0) {
+            add(current);
+            return;
+        }
+        docs[doc] = current;
+        dirty.set(doc);
+        for (String word : words(current)) postingsFor(word).insert(doc);
+        rebuildIfWasteful();
+    }
+
+    /**
+     * Drops a book from the index.
+     */
+    void remove(Book book) {
+        int doc = docOf(book);
+        if (doc < 0) return;
+        docs[doc] = null;
+        dirty.clear(doc);
+        live--;
+        removed++;
+        rebuildIfWasteful();
+    }
+
+    /**
+     * Finds the books matching every word of the query, by prefix.
+     * @param query Free text; case and accents are ignored.
+     * @return The matching books in catalog order; every book if the query has no words.
+     */
+    List<Book> search(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) return liveDocs();
+        prepareRanges();
+
+        // Cheapest term first: it supplies the candidates.
+        List<Term> ranked = new ArrayList<>(terms.size());
+        for (String term : terms) ranked.add(new Term(term));
+        ranked.sort((a, b) -> Long.compare(a.estimate, b.estimate));
+        if (ranked.get(0).estimate == 0) return List.of();
+
+        int[] candidates = ranked.get(0).docs();
+        int count = candidates.length;
+        List<String> verify = new ArrayList<>();
+        for (int t = 1; t < ranked.size(); t++) {
+            Term term = ranked.get(t);
+            if (term.estimate > (long) count * VERIFY_INSTEAD_OF_INTERSECT) {
+                verify.add(term.prefix); // checking the few candidates directly beats merging a huge list
+            } else {
+                count = intersect(candidates, count, term.docs());
+            }
+        }
+
+        List<Book> hits = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            int doc = candidates[i];
+            Book book = docs[doc];
+            if (book == null) continue;
+            if (dirty.get(doc)) {
+                if (!matchesAll(book, terms)) continue;
+            } else if (!verify.isEmpty() && !matchesAll(book, verify)) {
+                continue;
+            }
+            hits.add(book);
+        }
+        return hits;
+    }
+
+    /**
+     * Finds books matching every word of the query by prefix or within a few typos.
+     * A query word may be up to {@link #maxEdits} edits away from a word of the book.
+     * @param query Free text; case and accents are ignored.
+     * @return The matching books, fewest edits first, then in catalog order.
+     */
+    List<Book> searchFuzzy(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) return liveDocs();
+        prepareRanges();
+
+        // For each term, the documents at each distance; level 0 holds the prefix matches.
+        List<BitSet[]> levelsByTerm = new ArrayList<>(terms.size());
+        BitSet matching = null;
+        for (String term : terms) {
+            BitSet[] levels = new BitSet[maxEdits(term) + 1];
+            for (int d = 0; d < levels.length; d++) levels[d] = new BitSet();
+            for (int doc : new Term(term).docs()) levels[0].set(doc);
+            for (WordMatch match : similarWords(term)) {
+                Postings postings = dictionary.get(match.word());
+                for (int i = 0; i < postings.size; i++) levels[match.distance()].set(postings.ids[i]);
+            }
+            BitSet any = new BitSet();
+            for (BitSet level : levels) any.or(level);
+            if (matching == null) matching = any;
+            else matching.and(any);
+            levelsByTerm.add(levels);
+        }
+
+        List<int[]> scored = new ArrayList<>(); // {doc, total edits}
+        for (int doc = matching.nextSetBit(0); doc >= 0; doc = matching.nextSetBit(doc + 1)) {
+            Book book = docs[doc];
+            if (book == null) continue;
+            int edits = 0;
+            if (dirty.get(doc)) {
+                edits = fuzzyEdits(book, terms); // the postings may be for its old text
+                if (edits < 0) continue;
+            } else {
+                for (BitSet[] levels : levelsByTerm) {
+                    int d = 0;
+                    while (!levels[d].get(doc)) d++;
+                    edits += d;
+                }
+            }
+            scored.add(new int[] {doc, edits});
+        }
+        scored.sort((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[0], b[0]));
+        List<Book> hits = new ArrayList<>(scored.size());
+        for (int[] hit : scored) hits.add(docs[hit[0]]);
+        return hits;
+    }
+
+    /**
+     * Suggests a corrected query: each word that starts no word in the index is
+     * replaced by the closest, then most frequent, dictionary word.
+     * @return The corrected query in folded form, or null if no word needed correcting.
+     */
+    String suggest(String query) {
+        List<String> terms = tokenize(query);
+        prepareRanges();
+        boolean corrected = false;
+        List<String> suggestion = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            List<WordMatch> similar = new Term(term).estimate > 0 ? List.of() : similarWords(term);
+            if (similar.isEmpty()) {
+                suggestion.add(term);
+            } else {
+                suggestion.add(similar.get(0).word());
+                corrected = true;
+            }
+        }
+        return corrected ? String.join(" ", suggestion) : null;
+    }
+
+    /** A dictionary word near a query word. */
+    record WordMatch(String word, int distance, int frequency) {}
+
+    /**
+     * Dictionary words within {@link #maxEdits} of a query word, other than the word
+     * itself, closest first and then the most frequent.
+     *
+     * This walks the sorted dictionary as if it were a trie, keeping one row of the
+     * edit distance table per letter of the current word. Consecutive words share the
+     * rows of their common prefix, and once every entry of a row exceeds the allowed
+     * edits, no word with that prefix can match and the whole run of them is skipped.
+     * Only a small part of the dictionary is ever looked at.
+     */
+    List<WordMatch> similarWords(String term) {
+        int maxEdits = maxEdits(term);
+        if (maxEdits == 0) return List.of();
+        List<WordMatch> cached = similarByTerm.get(term);
+        if (cached != null) return cached;
+        prepareRanges();
+
+        List<WordMatch> matches = new ArrayList<>();
+        int[][] rows = {new int[term.length() + 1]}; // rows[k]: distances from the first k letters of the word
+        for (int j = 0; j <= term.length(); j++) rows[0][j] = j;
+        String previous = "";
+        int w = 0;
+        while (w < sortedWords.length) {
+            String word = sortedWords[w];
+            int k = commonPrefix(previous, word);
+            int pruned = -1;
+            while (k < word.length() && pruned < 0) {
+                k++;
+                if (k == rows.length) rows = Arrays.copyOf(rows, k * 2);
+                if (rows[k] == null) rows[k] = new int[term.length() + 1];
+                if (nextRow(term, word.charAt(k - 1), rows[k - 1], rows[k]) > maxEdits) pruned = k;
+            }
+            if (pruned < 0) {
+                int distance = rows[word.length()][term.length()];
+                if (distance > 0 && distance <= maxEdits) matches.add(new WordMatch(word, distance, dictionary.get(word).size));
+                previous = word;
+                w++;
+            } else {
+                String prefix = word.substring(0, pruned);
+                previous = prefix.substring(0, pruned - 1); // only the rows before the failed one are reusable
+                w = endOfPrefix(prefix, w);
+            }
+        }
+        matches.sort((a, b) -> a.distance() != b.distance()
+                ? Integer.compare(a.distance(), b.distance())
+                : Integer.compare(b.frequency(), a.frequency()));
+        if (similarByTerm.size() >= MAX_CACHED_LOOKUPS) similarByTerm.clear();
+        similarByTerm.put(term, Collections.unmodifiableList(matches));
+        return similarByTerm.get(term);
+    }
+
+    /**
+     * Fills in the edit distance row for one more letter of a word.
+     * @return The smallest entry, a lower bound on the distance of any word continuing this way.
+     */
+    private static int nextRow(String term, char letter, int[] previous, int[] row) {
+        row[0] = previous[0] + 1;
+        int min = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int substitute = previous[j - 1] + (term.charAt(j - 1) == letter ? 0 : 1);
+            row[j] = Math.min(substitute, Math.min(previous[j], row[j - 1]) + 1);
+            min = Math.min(min, row[j]);
+        }
+        return min;
+    }
+
+    /** The first index from {@code from} on whose word doesn't start with the prefix. */
+    private int endOfPrefix(String prefix, int from) {
+        int low = from;
+        int high = sortedWords.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedWords[mid].startsWith(prefix)) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    /**
+     * The Levenshtein distance: insertions, deletions and substitutions of one char each.
+     */
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 0; i < a.length(); i++) {
+            nextRow(b, a.charAt(i), previous, row);
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * How many typos a query word may contain: none up to three letters, where
+     * nearly every word is one edit away; one up to six letters; two beyond.
+     */
+    static int maxEdits(String term) {
+        return term.length() <= 3 ? 0 : term.length() <= 6 ? 1 : 2;
+    }
+
+    /**
+     * Scores a book against query words directly, without the index.
+     * @return The total edits needed to match every word (0 for prefix matches), or -1 if some word is too far off.
+     */
+    static int fuzzyEdits(Book book, List<String> terms) {
+        List<String> words = words(book);
+        String isbn = isbnKey(book.getIsbn());
+        int total = 0;
+        for (String term : terms) {
+            int best = isbn.startsWith(term) ? 0 : Integer.MAX_VALUE;
+            for (int i = 0; best > 0 && i < words.size(); i++) {
+                String word = words.get(i);
+                best = Math.min(best, word.startsWith(term) ? 0 : distance(term, word));
+            }
+            if (best > maxEdits(term)) return -1;
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Lower-cases text and strips accents, so "Émile" and "emile" compare equal.
+     */
+    static String fold(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) > 0x7F) {
+                return COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Splits text into folded words at anything that isn't a letter or digit.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * The ISBN as it is matched: folded, with separators such as hyphens removed.
+     * For a plain ISBN of digits this is the ISBN string itself.
+     */
+    static String isbnKey(String isbn) {
+        if (isbn == null) return "";
+        String folded = fold(isbn);
+        for (int i = 0; i < folded.length(); i++) {
+            if (!Character.isLetterOrDigit(folded.charAt(i))) return String.join("", tokenize(folded));
+        }
+        return folded;
+    }
+
+    private Postings postingsFor(String word) {
+        if (!similarByTerm.isEmpty()) similarByTerm.clear(); // frequencies change, and maybe the words
+        Postings postings = dictionary.get(word);
+        if (postings == null) {
+            dictionary.put(word, postings = new Postings());
+            sortedWords = null;
+        }
+        return postings;
+    }
+
+    /** Brings the sorted views that Term reads up to date. */
+    private void prepareRanges() {
+        if (sortedWords == null) {
+            sortedWords = dictionary.keySet().toArray(new String[0]);
+            Arrays.sort(sortedWords);
+        }
+        if (nextDoc - sortedIsbns > MAX_UNSORTED_ISBNS) sortIsbns();
+    }
+
+    private static List<String> words(Book book) {
+        List<String> words = tokenize(book.getTitle());
+        words.addAll(tokenize(book.getAuthor()));
+        return words;
+    }
+
+    /**
+     * Tests a book against query words directly, without the index.
+     * @param prefixes Folded query words, as returned by {@link #tokenize}.
+     */
+    static boolean matchesAll(Book book, List<String> prefixes) {
+        List<String> words = words(book);
+        String isbn = isbnKey(book.getIsbn());
+        for (String prefix : prefixes) {
+            boolean found = isbn.startsWith(prefix);
+            for (int i = 0; !found && i < words.size(); i++) {
+                found = words.get(i).startsWith(prefix);
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /** Keeps the candidates that also appear in docs (both sorted); returns the new count. */
+    private static int intersect(int[] candidates, int count, int[] docs) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < docs.length; i++) {
+            int doc = candidates[i];
+            while (j < docs.length && docs[j] < doc) j++;
+            if (j < docs.length && docs[j] == doc) candidates[kept++] = doc;
+        }
+        return kept;
+    }
+
+    /**
+     * Finds the document holding this exact book instance, through the ISBN order.
+     */
+    private int docOf(Book book) {
+        String key = isbnKey(book.getIsbn());
+        for (int i = lowerBound(key); i < sortedIsbns && isbnKeys[byIsbn[i]].equals(key); i++) {
+            if (docs[byIsbn[i]] == book) return byIsbn[i];
+        }
+        for (int doc = sortedIsbns; doc < nextDoc; doc++) {
+            if (docs[doc] == book) return doc;
+        }
+        return -1;
+    }
+
+    /** The first position in byIsbn whose key is not less than the given one. */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = sortedIsbns;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (isbnKeys[byIsbn[mid]].compareTo(key) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /** Brings documents added since the last sort into the ISBN order. */
+    private void sortIsbns() {
+        Integer[] order = new Integer[nextDoc];
+        for (int doc = 0; doc < nextDoc; doc++) order[doc] = doc;
+        Arrays.sort(order, (a, b) -> isbnKeys[a].compareTo(isbnKeys[b]));
+        byIsbn = new int[nextDoc];
+        for (int i = 0; i < nextDoc; i++) byIsbn[i] = order[i];
+        sortedIsbns = nextDoc;
+    }
+
+    private List<Book> liveDocs() {
+        List<Book> books = new ArrayList<>(live);
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (docs[doc] != null) books.add(docs[doc]);
+        }
+        return books;
+    }
+
+    private void rebuildIfWasteful() {
+        int waste = removed + dirty.cardinality();
+        if (waste < MIN_REBUILD_WASTE || waste * 4 < live) return;
+        List<Book> books = liveDocs();
+        dictionary.clear();
+        sortedWords = null;
+        docs = new Book[Math.max(16, books.size())];
+        isbnKeys = new String[docs.length];
+        nextDoc = 0;
+        live = 0;
+        byIsbn = new int[0];
+        sortedIsbns = 0;
+        dirty.clear();
+        removed = 0;
+        for (Book book : books) add(book);
+    }
+
+    /**
+     * A query word: the range of dictionary words and of ISBNs it is a prefix of.
+     */
+    private final class Term {
+        final String prefix;
+        final int firstWord;
+        final int endWord;
+        final int firstIsbn;
+        final int endIsbn;
+        final long estimate; // total postings, an upper bound on the documents that match
+
+        Term(String prefix) {
+            this.prefix = prefix;
+            String end = prefix + Character.MAX_VALUE;
+            int first = Arrays.binarySearch(sortedWords, prefix);
+            firstWord = first >= 0 ? first : -first - 1;
+            int last = Arrays.binarySearch(sortedWords, end);
+            endWord = last >= 0 ? last : -last - 1;
+            firstIsbn = lowerBound(prefix);
+            endIsbn = lowerBound(end);
+            long total = endIsbn - firstIsbn;
+            for (int w = firstWord; w < endWord; w++) total += dictionary.get(sortedWords[w]).size;
+            for (int doc = sortedIsbns; doc < nextDoc; doc++) {
+                if (isbnKeys[doc].startsWith(prefix)) total++;
+            }
+            estimate = total;
+        }
+
+        /** The sorted, distinct documents containing a matching word or ISBN. */
+        int[] docs() {
+            if (endWord - firstWord == 1 && endIsbn == firstIsbn && estimate == dictionary.get(sortedWords[firstWord]).size) {
+                Postings only = dictionary.get(sortedWords[firstWord]);
+                return Arrays.copyOf(only.ids, only.size);
+            }
+            BitSet union = new BitSet();
+            for (int w = firstWord; w < endWord; w++) {
+                Postings postings = dictionary.get(sortedWords[w]);
+                for (int i = 0; i < postings.size; i++) union.set(postings.ids[i]);
+            }
+            for (int i = firstIsbn; i < endIsbn; i++) union.set(byIsbn[i]);
+            for (int doc = sortedIsbns; doc < nextDoc; doc++) {
+                if (isbnKeys[doc].startsWith(prefix)) union.set(doc);
+            }
+            return union.stream().toArray();
+        }
+    }
+
+    /** A growable, sorted list of document ids without duplicates. */
+    private static final class Postings {
+        private int[] ids = new int[1];
+        private int size;
+
+        /** Appends a document id larger than any already present. */
+        void add(int doc) {
+            if (size > 0 && ids[size - 1] == doc) return; // the same word twice in one book
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = doc;
+        }
+
+        /** Adds a document id anywhere in the list, keeping it sorted. */
+        void insert(int doc) {
+            int at = Arrays.binarySearch(ids, 0, size, doc);
+            if (at >= 0) return;
+            at = -at - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = doc;
+            size++;
+        }
+    }
+}
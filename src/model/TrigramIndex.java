@@ -0,0 +1,319 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trigram index over the title, author and ISBN of every book, for substring search.
+ *
+ * Each field is lower-cased exactly as {@link Library#searchBooks} does and every run
+ * of three characters in it is recorded. A keyword can only occur in a field that
+ * contains all of the keyword's trigrams, so intersecting their posting lists yields
+ * a small set of candidates; each is then checked with the same contains() test the
+ * plain scan used. The result is identical to the scan, in the same order.
+ * Keywords shorter than three characters have no trigrams and are answered by a scan.
+ *
+ * Posting lists are delta-encoded varints, so frequent trigrams such as the "978"
+ * of every ISBN cost about a byte per book. Lists only grow at the end: an updated
+ * book is indexed again under a new document id that keeps the old one's rank, and
+ * a removed book leaves a hole. The index is rebuilt once those make up a quarter
+ * of it.
+ */
+final class TrigramIndex {
+
+    private static final int MIN_REBUILD_WASTE = 1024;
+    private static final int INTERSECT_LIMIT = 8;
+
+    private TrigramTable trigrams = new TrigramTable();
+    private Book[] docs = new Book[16];
+    private int[] ranks = new int[16]; // catalog order; differs from the doc id once a book is updated
+    private int nextDoc;
+    private int nextRank;
+    private int live;
+    private boolean reordered;
+    private final IsbnIndex docsByIsbn = new IsbnIndex(doc -> docs[doc].getIsbn());
+
+    /**
+     * Creates an index over the given books, in catalog order.
+     */
+    TrigramIndex(List<Book> books) {
+        for (Book book : books) add(book);
+    }
+
+    /**
+     * Indexes a book added at the end of the catalog.
+     */
+    void add(Book book) {
+        index(book, nextRank++);
+    }
+
+    /**
+     * Re-indexes a book whose text may have changed, keeping its place in the catalog.
+     * @param current The book as it is now; its ISBN identifies the entry to replace.
+     */
+    void update(Book current) {
+        int doc = docsByIsbn.find(current.getIsbn());
+        if (doc < 0) {
+            add(current);
+            return;
+        }
+        int rank = ranks[doc];
+        unindex(doc);
+        index(current, rank);
+        reordered = true;
+        rebuildIfWasteful();
+    }
+
+    /**
+     * Drops a book from the index.
+     * @param isbn The ISBN of the removed book.
+     */
+    void remove(String isbn) {
+        int doc = docsByIsbn.find(isbn);
+        if (doc < 0) return;
+        unindex(doc);
+        rebuildIfWasteful();
+    }
+
+    /**
+     * Finds the books whose title, author or ISBN contains the keyword, ignoring case.
+     * @param keyword The text to look for.
+     * @return The matching books in catalog order.
+     */
+    List<Book> search(String keyword) {
+        String lowerCaseKeyword = keyword.toLowerCase();
+        if (lowerCaseKeyword.length() < 3) return scan(lowerCaseKeyword);
+
+        long[] keys = trigramsOf(lowerCaseKeyword);
+        Postings[] lists = new Postings[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            lists[i] = trigrams.get(keys[i]);
+            if (lists[i] == null) return List.of();
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.count, b.count));
+
+        int[] candidates = lists[0].decode();
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && lists[i].count <= (long) count * INTERSECT_LIMIT; i++) {
+            count = lists[i].retain(candidates, count);
+        }
+
+        List<Book> hits = new ArrayList<>(Math.min(count, 1024));
+        List<Integer> hitDocs = reordered ? new ArrayList<>() : null;
+        for (int i = 0; i < count; i++) {
+            Book book = docs[candidates[i]];
+            if (book != null && matches(book, lowerCaseKeyword)) {
+                if (hitDocs != null) hitDocs.add(candidates[i]);
+                else hits.add(book);
+            }
+        }
+        if (hitDocs != null) {
+            hitDocs.sort((a, b) -> Integer.compare(ranks[a], ranks[b]));
+            for (int doc : hitDocs) hits.add(docs[doc]);
+        }
+        return hits;
+    }
+
+    /** The contains() test of the plain scan. */
+    static boolean matches(Book book, String lowerCaseKeyword) {
+        return book.getTitle().toLowerCase().contains(lowerCaseKeyword)
+                || book.getAuthor().toLowerCase().contains(lowerCaseKeyword)
+                || book.getIsbn().toLowerCase().contains(lowerCaseKeyword);
+    }
+
+    private List<Book> scan(String lowerCaseKeyword) {
+        List<Integer> order = new ArrayList<>(live);
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (docs[doc] != null && matches(docs[doc], lowerCaseKeyword)) order.add(doc);
+        }
+        if (reordered) order.sort((a, b) -> Integer.compare(ranks[a], ranks[b]));
+        List<Book> hits = new ArrayList<>(order.size());
+        for (int doc : order) hits.add(docs[doc]);
+        return hits;
+    }
+
+    private void index(Book book, int rank) {
+        if (nextDoc == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+            ranks = Arrays.copyOf(ranks, docs.length);
+        }
+        int doc = nextDoc++;
+        docs[doc] = book;
+        ranks[doc] = rank;
+        live++;
+        docsByIsbn.add(doc);
+        addField(doc, book.getTitle());
+        addField(doc, book.getAuthor());
+        addField(doc, book.getIsbn());
+    }
+
+    private void unindex(int doc) {
+        docsByIsbn.remove(doc);
+        docs[doc] = null;
+        live--;
+    }
+
+    private void addField(int doc, String text) {
+        if (text == null) return;
+        String lower = text.toLowerCase();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            trigrams.getOrCreate(key(lower, i)).add(doc);
+        }
+    }
+
+    private static long[] trigramsOf(String lowerCaseKeyword) {
+        long[] keys = new long[lowerCaseKeyword.length() - 2];
+        for (int i = 0; i < keys.length; i++) keys[i] = key(lowerCaseKeyword, i);
+        Arrays.sort(keys);
+        int distinct = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) keys[distinct++] = keys[i];
+        }
+        return Arrays.copyOf(keys, distinct);
+    }
+
+    /** Packs three chars into one non-negative long. */
+    private static long key(String text, int at) {
+        return ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+    }
+
+    private void rebuildIfWasteful() {
+        int waste = nextDoc - live;
+        if (waste < MIN_REBUILD_WASTE || waste * 4 < live) return;
+        Integer[] order = new Integer[live];
+        int n = 0;
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (docs[doc] != null) order[n++] = doc;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(ranks[a], ranks[b]));
+        Book[] books = new Book[live];
+        for (int i = 0; i < live; i++) books[i] = docs[order[i]];
+
+        trigrams = new TrigramTable();
+        docs = new Book[Math.max(16, books.length)];
+        ranks = new int[docs.length];
+        nextDoc = 0;
+        nextRank = 0;
+        live = 0;
+        reordered = false;
+        docsByIsbn.rebuild(0, 0);
+        for (Book book : books) add(book);
+    }
+
+    /**
+     * An open-addressing map from packed trigram to posting list, without boxing.
+     */
+    private static final class TrigramTable {
+        private long[] keys = new long[1024];
+        private Postings[] values = new Postings[1024];
+        private int size;
+
+        Postings get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+            }
+            return null;
+        }
+
+        Postings getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            for (; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+            }
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                return getOrCreate(key);
+            }
+            keys[slot] = key;
+            size++;
+            return values[slot] = new Postings();
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Postings[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] == null) continue;
+                int slot = slot(oldKeys[i], mask);
+                while (values[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 40) & mask;
+        }
+    }
+
+    /**
+     * An ascending list of document ids, stored as varint gaps.
+     */
+    private static final class Postings {
+        private byte[] bytes = new byte[4];
+        private int length;
+        private int count;
+        private int last = -1;
+
+        /** Appends a document id; ids must not decrease. */
+        void add(int doc) {
+            if (doc == last) return; // the same trigram twice in one book
+            if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            int gap = doc - last;
+            while ((gap & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            last = doc;
+            count++;
+        }
+
+        int[] decode() {
+            int[] docs = new int[count];
+            int doc = -1;
+            int at = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[at++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) break;
+                }
+                docs[i] = doc += gap;
+            }
+            return docs;
+        }
+
+        /** Keeps the candidates (ascending) that are in this list; returns the new count. */
+        int retain(int[] candidates, int candidateCount) {
+            int kept = 0;
+            int doc = -1;
+            int at = 0;
+            int read = 0;
+            for (int i = 0; i < candidateCount; i++) {
+                int wanted = candidates[i];
+                while (doc < wanted && read < count) {
+                    int gap = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = bytes[at++];
+                        gap |= (b & 0x7F) << shift;
+                        if (b >= 0) break;
+                    }
+                    doc += gap;
+                    read++;
+                }
+                if (doc == wanted) candidates[kept++] = wanted;
+                else if (doc < wanted) break; // list exhausted
+            }
+            return kept;
+        }
+    }
+}
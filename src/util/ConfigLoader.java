@@ -29,6 +29,23 @@ public class ConfigLoader {
     public static String getProperty(String key) {
         return properties.getProperty(key);
     }
+
+    /**
+     * Reads a numeric property, falling back to a default when it is missing or malformed.
+     * @param key The key of the property to read.
+     * @param defaultValue The value to use if the property is absent or not a number.
+     * @return The configured value or the default.
+     */
+    public static long getLongProperty(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Warning: invalid value for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
     
     /**
      * Saves a property to the config.properties file.
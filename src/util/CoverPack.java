@@ -0,0 +1,475 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Stores encoded images in one append-only file instead of one file per image.
+ * Identical images are stored once, however many names they are stored under.
+ *
+ * Layout of the pack: a 16-byte header (magic "LIBP", version, flags and a
+ * generation number) followed by one entry per write. Each entry holds its length,
+ * a CRC32 of its bytes, its key and its bytes. An image is stored once, keyed by
+ * "#" and the SHA-256 of its bytes; each name it is stored under is an entry
+ * holding that digest. Storing or removing a name appends an entry (an empty one
+ * for a removal) and the last entry for a key wins. Images are counted by the
+ * names referring to them; one that no name refers to any more is reused if the
+ * same bytes are stored again, and otherwise dropped by the next compaction.
+ *
+ * A sidecar index (the pack's name plus ".idx") records the key, offset and length
+ * of every entry as it is appended, plus the digest a name refers to, so opening a
+ * pack of many thousand images reads the small index rather than the whole pack.
+ * Entries the index is missing, after a crash, are found by scanning the pack from
+ * where the index ends. Both files carry the same generation number, so an index
+ * left over from before a compaction is ignored.
+ *
+ * Images are read with positional reads on the pack's channel rather than through
+ * a mapping: covers are small and the gallery wants them in no particular order,
+ * and a page fault pulls in the pages around it, many times the bytes of one cover,
+ * where a read fetches just the cover. Space taken by replaced images is reclaimed
+ * when the pack is opened, once it makes up more than half of the file. Packs
+ * written before images were shared, which keep a copy under every name, are
+ * converted then too.
+ */
+public final class CoverPack {
+
+    private static final int MAGIC = 0x4C494250; // "LIBP"
+    private static final int INDEX_MAGIC = 0x4C494249; // "LIBI"
+    private static final short VERSION = 1;
+    private static final short FLAG_SHARED = 1; // names refer to images by digest
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_HEADER_BYTES = 10; // length, checksum, key length
+    private static final int MAX_KEY_BYTES = 1024;
+    private static final int DIGEST_BYTES = 32;
+    private static final String IMAGE_PREFIX = "#";
+    private static final long MIN_COMPACTION_BYTES = 4 * 1024 * 1024;
+    private static final HexFormat HEX = HexFormat.of();
+
+    /** Where an entry's bytes are in the pack. */
+    private record Entry(long offset, int length, int checksum) {}
+
+    private final Path file;
+    private final Path indexFile;
+    private FileChannel channel;
+    private FileChannel index;
+    private short flags;
+    private final Map<String, Entry> images = new HashMap<>(); // by digest, referred to or not
+    private final Map<String, String> digests = new HashMap<>(); // name -> digest of its image
+    private final Map<String, Integer> references = new HashMap<>(); // digest -> names referring to it
+    private final Map<String, Entry> unshared = new HashMap<>(); // by name, in packs from before sharing
+    private long generation;
+    private long end; // where the next entry goes
+    private long liveBytes;
+
+    private CoverPack(Path file) {
+        this.file = file;
+        this.indexFile = file.resolveSibling(file.getFileName() + ".idx");
+    }
+
+    /**
+     * Opens a pack, creating it if it doesn't exist. It is compacted if replaced
+     * images take up more than half of it, or if it predates shared images.
+     * @param file The pack file.
+     * @return The opened pack.
+     */
+    public static CoverPack open(Path file) throws IOException {
+        CoverPack pack = new CoverPack(file);
+        pack.load();
+        long wasted = pack.end - HEADER_BYTES - pack.liveBytes;
+        if ((pack.flags & FLAG_SHARED) == 0 || (wasted > MIN_COMPACTION_BYTES && wasted > pack.liveBytes)) {
+            pack.compact();
+        }
+        return pack;
+    }
+
+    /**
+     * @param key The name an image was stored under.
+     * @return The image's bytes, or null if there is no such image or its bytes are damaged.
+     */
+    public synchronized byte[] get(String key) {
+        String digest = digests.get(key);
+        Entry entry = digest != null ? images.get(digest) : unshared.get(key);
+        if (entry == null) return null;
+        try {
+            byte[] data = read(entry.offset(), entry.length());
+            if (checksum(data) != entry.checksum()) {
+                System.err.println("Error reading cover " + key + ": checksum mismatch");
+                return null;
+            }
+            return data;
+        } catch (IOException e) {
+            System.err.println("Error reading cover " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Identifies the image stored under a name by its content, so names holding the
+     * same image can share anything made from it, such as its decoded pixels.
+     * @param key A name.
+     * @return The SHA-256 of the image's bytes in hex, or null if nothing is stored under the name.
+     */
+    public synchronized String contentKey(String key) {
+        return digests.get(key);
+    }
+
+    /**
+     * @param key A name.
+     * @return true if an image is stored under it.
+     */
+    public synchronized boolean contains(String key) {
+        return digests.containsKey(key) || unshared.containsKey(key);
+    }
+
+    /**
+     * @return The names of every stored image.
+     */
+    public synchronized List<String> keys() {
+        List<String> keys = new ArrayList<>(digests.keySet());
+        keys.addAll(unshared.keySet());
+        return keys;
+    }
+
+    /**
+     * Stores an image, replacing any stored under the same name. If the same bytes
+     * are stored already, only the name is written. It is written but not synced;
+     * call {@link #force} once a batch of writes is complete.
+     * @param key The name to store it under.
+     * @param data The encoded image; must not be empty.
+     */
+    public synchronized void put(String key, byte[] data) throws IOException {
+        if (data.length == 0) throw new IllegalArgumentException("An image can't be empty.");
+        if (key.startsWith(IMAGE_PREFIX)) throw new IllegalArgumentException("Cover names can't start with " + IMAGE_PREFIX);
+        byte[] digest = sha256(data);
+        String hex = HEX.formatHex(digest);
+        if (hex.equals(digests.get(key))) return;
+        if (!images.containsKey(hex)) append(IMAGE_PREFIX + hex, data, null);
+        append(key, digest, digest);
+    }
+
+    /**
+     * Removes the image stored under a name, if any. Its bytes are dropped at the
+     * next compaction once no other name refers to them.
+     * @param key The name.
+     */
+    public synchronized void remove(String key) throws IOException {
+        if (contains(key)) append(key, new byte[0], null);
+    }
+
+    /**
+     * Makes every write so far durable.
+     */
+    public synchronized void force() throws IOException {
+        channel.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Copies images kept as separate files into the pack. Each file becomes the entry
+     * named after it, without its extension. The files themselves are left in place.
+     * @param directory The directory of image files.
+     * @param extension The extension of the files to take, e.g. ".png".
+     * @return How many images were copied.
+     */
+    public synchronized int importFiles(Path directory, String extension) throws IOException {
+        if (!Files.isDirectory(directory)) return 0;
+        int copied = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + extension)) {
+            for (Path image : files) {
+                String name = image.getFileName().toString();
+                byte[] data = Files.readAllBytes(image);
+                if (data.length == 0) continue;
+                put(name.substring(0, name.length() - extension.length()), data);
+                copied++;
+            }
+        }
+        force();
+        return copied;
+    }
+
+    /**
+     * Rewrites the pack with one copy of each image still referred to, followed by
+     * the current entry for each name.
+     */
+    public synchronized void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long newGeneration = ThreadLocalRandom.current().nextLong();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(header(MAGIC, FLAG_SHARED, newGeneration));
+            Set<String> written = new HashSet<>();
+            for (String digest : references.keySet()) {
+                Entry image = images.get(digest);
+                out.write(entryFrame(IMAGE_PREFIX + digest, read(image.offset(), image.length()), image.checksum()));
+                written.add(digest);
+            }
+            // Images from before sharing are stored once per distinct content too.
+            Map<String, byte[]> names = new HashMap<>();
+            for (Map.Entry<String, Entry> e : unshared.entrySet()) {
+                Entry image = e.getValue();
+                byte[] data = read(image.offset(), image.length());
+                byte[] digest = sha256(data);
+                if (written.add(HEX.formatHex(digest))) {
+                    out.write(entryFrame(IMAGE_PREFIX + HEX.formatHex(digest), data, image.checksum()));
+                }
+                names.put(e.getKey(), digest);
+            }
+            for (Map.Entry<String, String> e : digests.entrySet()) names.put(e.getKey(), HEX.parseHex(e.getValue()));
+            for (Map.Entry<String, byte[]> e : names.entrySet()) {
+                out.write(entryFrame(e.getKey(), e.getValue(), checksum(e.getValue())));
+            }
+            out.force(true);
+        }
+        close();
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(indexFile);
+        load();
+    }
+
+    /**
+     * @return The bytes of the distinct images currently stored, not counting replaced ones.
+     */
+    public synchronized long liveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return The size of the pack file, including replaced images.
+     */
+    public synchronized long size() {
+        return end;
+    }
+
+    /**
+     * Closes the pack's files. The pack can't be used afterwards.
+     */
+    public synchronized void close() throws IOException {
+        clear();
+        if (channel != null) channel.close();
+        if (index != null) index.close();
+    }
+
+    private void clear() {
+        images.clear();
+        digests.clear();
+        references.clear();
+        unshared.clear();
+        liveBytes = 0;
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_BYTES) {
+            generation = ThreadLocalRandom.current().nextLong();
+            flags = FLAG_SHARED;
+            channel.truncate(0);
+            channel.write(header(MAGIC, flags, generation), 0);
+            channel.force(true);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) throw new IOException(file + " is not a cover pack.");
+            short version = header.getShort();
+            if (version > VERSION) throw new IOException(file + " was written by a newer version (" + version + ").");
+            flags = header.getShort();
+            generation = header.getLong();
+        }
+        end = HEADER_BYTES;
+        loadIndex();
+        scanFrom(end);
+    }
+
+    /** Applies the sidecar index, or starts a new one if it is missing or from another generation. */
+    private void loadIndex() throws IOException {
+        index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = index.size();
+        ByteBuffer in = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        while (in.hasRemaining() && index.read(in, in.position()) > 0) { }
+        in.flip();
+        boolean usable = in.remaining() >= HEADER_BYTES && in.getInt() == INDEX_MAGIC
+                && in.getShort() <= VERSION && in.getShort() == flags && in.getLong() == generation;
+        long channelSize = channel.size();
+        long indexed = HEADER_BYTES;
+        while (usable && in.remaining() >= 2) {
+            int keyLength = in.getShort() & 0xFFFF;
+            if (in.remaining() < keyLength + 16) break; // torn record
+            byte[] keyBytes = new byte[keyLength];
+            in.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            long offset = in.getLong();
+            int length = in.getInt();
+            int checksum = in.getInt();
+            byte[] digest = null;
+            if (refersToImage(key, length)) {
+                if (in.remaining() < DIGEST_BYTES) break;
+                digest = new byte[DIGEST_BYTES];
+                in.get(digest);
+            }
+            if (offset + length > channelSize) break; // the pack lost the tail this points to
+            apply(key, new Entry(offset, length, checksum), digest);
+            indexed = in.position();
+            end = offset + length;
+        }
+        if (!usable) {
+            clear();
+            end = HEADER_BYTES;
+            index.truncate(0);
+            index.write(header(INDEX_MAGIC, flags, generation), 0);
+        } else {
+            index.truncate(indexed);
+        }
+        index.position(index.size());
+    }
+
+    /** Reads the entries the index doesn't cover, indexing them, and drops a torn tail. */
+    private void scanFrom(long position) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES);
+        while (position + ENTRY_HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            int keyLength = header.getShort() & 0xFFFF;
+            long data = position + ENTRY_HEADER_BYTES + keyLength;
+            if (length < keyLength || keyLength > MAX_KEY_BYTES || position + ENTRY_HEADER_BYTES + length > size) break;
+            String key = new String(read(position + ENTRY_HEADER_BYTES, keyLength), StandardCharsets.UTF_8);
+            Entry entry = new Entry(data, length - keyLength, checksum);
+            byte[] digest = null;
+            if (refersToImage(key, entry.length())) {
+                if (entry.length() != DIGEST_BYTES) break;
+                digest = read(data, DIGEST_BYTES);
+            }
+            apply(key, entry, digest);
+            index.write(indexRecord(key, entry, digest), index.size());
+            position = data + entry.length();
+        }
+        if (position < size) channel.truncate(position); // an entry cut short by a crash
+        end = position;
+        index.position(index.size());
+    }
+
+    /** Whether an entry names an image by its digest, as opposed to holding an image or removing a name. */
+    private boolean refersToImage(String key, int length) {
+        return (flags & FLAG_SHARED) != 0 && length > 0 && !key.startsWith(IMAGE_PREFIX);
+    }
+
+    private void append(String key, byte[] data, byte[] digest) throws IOException {
+        int checksum = checksum(data);
+        ByteBuffer frame = entryFrame(key, data, checksum);
+        long start = end;
+        while (frame.hasRemaining()) channel.write(frame, start + frame.position());
+        Entry entry = new Entry(end + frame.limit() - data.length, data.length, checksum);
+        end += frame.limit();
+        apply(key, entry, digest);
+        index.write(indexRecord(key, entry, digest));
+    }
+
+    private void apply(String key, Entry entry, byte[] digest) {
+        if ((flags & FLAG_SHARED) == 0) {
+            Entry previous = entry.length() > 0 ? unshared.put(key, entry) : unshared.remove(key);
+            if (previous != null) liveBytes -= previous.length();
+            if (entry.length() > 0) liveBytes += entry.length();
+        } else if (key.startsWith(IMAGE_PREFIX)) {
+            images.put(key.substring(IMAGE_PREFIX.length()), entry);
+        } else {
+            String hex = digest != null ? HEX.formatHex(digest) : null;
+            String previous = hex != null ? digests.put(key, hex) : digests.remove(key);
+            if (previous != null) release(previous);
+            if (hex != null && references.merge(hex, 1, Integer::sum) == 1) liveBytes += imageLength(hex);
+        }
+    }
+
+    /** Drops one name's reference to an image; the last one takes the image out of the live bytes. */
+    private void release(String digest) {
+        if (references.merge(digest, -1, Integer::sum) == 0) {
+            references.remove(digest);
+            liveBytes -= imageLength(digest);
+        }
+    }
+
+    private int imageLength(String digest) {
+        Entry image = images.get(digest);
+        return image != null ? image.length() : 0;
+    }
+
+    private byte[] read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Unexpected end of " + file);
+        }
+        return buffer.array();
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuffer header(int magic, short flags, long generation) {
+        return ByteBuffer.allocate(HEADER_BYTES).putInt(magic).putShort(VERSION).putShort(flags).putLong(generation).flip();
+    }
+
+    private static ByteBuffer entryFrame(String key, byte[] data, int checksum) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_BYTES) throw new IllegalArgumentException("Cover key too long: " + key);
+        return ByteBuffer.allocate(ENTRY_HEADER_BYTES + keyBytes.length + data.length)
+                .putInt(keyBytes.length + data.length).putInt(checksum).putShort((short) keyBytes.length)
+                .put(keyBytes).put(data).flip();
+    }
+
+    private static ByteBuffer indexRecord(String key, Entry entry, byte[] digest) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + key.length());
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+            out.writeLong(entry.offset());
+            out.writeInt(entry.length());
+            out.writeInt(entry.checksum());
+            if (digest != null) out.write(digest);
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } catch (IOException e) {
+            // Writing to an in-memory buffer can't fail.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -104,7 +104,7 @@ public class AddBookPanel extends JPanel {
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
             selectedImagePath = selectedFile.getAbsolutePath();
-            ImageIcon icon = new ImageIcon(new ImageIcon(selectedImagePath).getImage().getScaledInstance(190, 220, Image.SCALE_SMOOTH));
+            ImageIcon icon = ImageUtils.loadPreview(selectedImagePath);
             imagePreviewLabel.setText("");
             imagePreviewLabel.setIcon(icon);
         }
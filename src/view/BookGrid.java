@@ -0,0 +1,273 @@
+package view;
+
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import model.Book;
+
+/**
+ * A scrollable grid of book cards that only paints the cards in view.
+ *
+ * Cards are not child components. Each visible book is drawn by a card renderer
+ * stamped through a {@link CellRendererPane}, the way JList and JTable draw their
+ * cells, so the cost of a refresh or a scroll depends on the size of the viewport
+ * rather than the number of books. Renderers stay with their book while it is in
+ * view and go back to a small pool when it scrolls out, so repainting a card that
+ * hasn't changed doesn't lay out its text or fetch its cover again.
+ *
+ * Covers come from the {@link CoverLoader}. Cards show a placeholder until their
+ * cover is ready; the grid asks for the covers in view first, then for a couple of
+ * rows below and one above, so scrolling on usually finds them already read.
+ *
+ * Cards wrap into as many columns as fit the width, with the same spacing the
+ * gallery's flow layout used.
+ */
+final class BookGrid extends JComponent implements Scrollable {
+
+    static final int CARD_WIDTH = 220;
+    static final int CARD_HEIGHT = 350;
+    static final int GAP = 20;
+    private static final int ROWS_AHEAD = 2;
+    private static final int ROWS_BEHIND = 1;
+
+    private final CellRendererPane rendererPane = new CellRendererPane();
+    private final Map<Integer, Card> cardsInView = new HashMap<>(); // by position in the book list
+    private final ArrayDeque<Card> spareCards = new ArrayDeque<>();
+    private final CoverLoader covers = CoverLoader.shared();
+    private final Consumer<String> coverListener = this::coverReady;
+    private List<Book> books = List.of();
+    private int lastWidth;
+    private int requestedFirst = -1; // the range covers were last asked for
+    private int requestedLast = -1;
+
+    BookGrid() {
+        setOpaque(true);
+        setBackground(UIFactory.COLOR_BACKGROUND);
+        add(rendererPane);
+    }
+
+    /** Listens for covers only while on screen, so a grid that is thrown away can be collected. */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        covers.addListener(coverListener);
+    }
+
+    @Override
+    public void removeNotify() {
+        covers.removeListener(coverListener);
+        // Covers read while detached were not heard about, so cards are set up afresh.
+        spareCards.addAll(cardsInView.values());
+        cardsInView.clear();
+        requestedFirst = requestedLast = -1;
+        super.removeNotify();
+    }
+
+    /**
+     * Shows a new list of books, from the top.
+     * @param books The books, in display order. The list is kept, not copied.
+     */
+    void setBooks(List<Book> books) {
+        this.books = books;
+        spareCards.addAll(cardsInView.values());
+        cardsInView.clear();
+        requestedFirst = requestedLast = -1;
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @param point A point in the grid's coordinates.
+     * @return The book whose card is at that point, or null for the gaps between cards.
+     */
+    Book bookAt(Point point) {
+        int column = (point.x - GAP) / (CARD_WIDTH + GAP);
+        int row = (point.y - GAP) / (CARD_HEIGHT + GAP);
+        if (point.x < GAP || point.y < GAP || column >= columns()) return null;
+        int index = row * columns() + column;
+        return index < books.size() && cellBounds(index).contains(point) ? books.get(index) : null;
+    }
+
+    private int columns() {
+        int width = getWidth() > 0 ? getWidth() : getParent() != null ? getParent().getWidth() : 0;
+        return Math.max(1, (width - GAP) / (CARD_WIDTH + GAP));
+    }
+
+    private Rectangle cellBounds(int index) {
+        int columns = columns();
+        return new Rectangle(GAP + (index % columns) * (CARD_WIDTH + GAP),
+                GAP + (index / columns) * (CARD_HEIGHT + GAP), CARD_WIDTH, CARD_HEIGHT);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int rows = (books.size() + columns() - 1) / columns();
+        return new Dimension(CARD_WIDTH + 2 * GAP, GAP + rows * (CARD_HEIGHT + GAP));
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        if (width != lastWidth) {
+            lastWidth = width;
+            revalidate(); // the number of columns, and so the height, may have changed
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        // A scrolled viewport only repaints the strip it uncovered, so what is in
+        // view comes from the visible rectangle rather than the clip.
+        Rectangle visible = getVisibleRect();
+        int columns = columns();
+        int first = firstRow(visible) * columns;
+        int last = Math.min(books.size() - 1, (lastRow(visible) + 1) * columns - 1);
+        releaseCardsOutside(first, last);
+        requestCovers(first, last, columns);
+        int firstPainted = Math.max(first, firstRow(clip) * columns);
+        int lastPainted = Math.min(last, (lastRow(clip) + 1) * columns - 1);
+        for (int index = firstPainted; index <= lastPainted; index++) {
+            Card card = cardsInView.get(index);
+            if (card == null) {
+                card = spareCards.isEmpty() ? new Card() : spareCards.pop();
+                card.setBook(books.get(index), covers.cached(books.get(index).getIsbn()));
+                cardsInView.put(index, card);
+            }
+            Rectangle bounds = cellBounds(index);
+            if (bounds.intersects(clip)) rendererPane.paintComponent(g, card, this, bounds.x, bounds.y, bounds.width, bounds.height, true);
+        }
+    }
+
+    private static int firstRow(Rectangle area) {
+        return Math.max(0, (area.y - GAP) / (CARD_HEIGHT + GAP));
+    }
+
+    private static int lastRow(Rectangle area) {
+        return Math.max(0, (area.y + area.height - GAP) / (CARD_HEIGHT + GAP));
+    }
+
+    /** Asks for the covers in view, then those a few rows beyond it, when the range has moved. */
+    private void requestCovers(int first, int last, int columns) {
+        if (first == requestedFirst && last == requestedLast) return;
+        requestedFirst = first;
+        requestedLast = last;
+        List<String> isbns = new ArrayList<>();
+        for (int index = first; index <= last; index++) isbns.add(books.get(index).getIsbn());
+        int ahead = Math.min(books.size() - 1, last + ROWS_AHEAD * columns);
+        for (int index = last + 1; index <= ahead; index++) isbns.add(books.get(index).getIsbn());
+        int behind = Math.max(0, first - ROWS_BEHIND * columns);
+        for (int index = first - 1; index >= behind; index--) isbns.add(books.get(index).getIsbn());
+        covers.want(isbns);
+    }
+
+    /** Swaps a cover that has just been read into its card, if the book is still in view. */
+    private void coverReady(String isbn) {
+        for (Map.Entry<Integer, Card> entry : cardsInView.entrySet()) {
+            int index = entry.getKey();
+            if (index < books.size() && books.get(index).getIsbn().equals(isbn)) {
+                entry.getValue().setCover(covers.cached(isbn));
+                repaint(cellBounds(index));
+            }
+        }
+    }
+
+    /** Returns the renderers of books no longer in view to the pool. */
+    private void releaseCardsOutside(int first, int last) {
+        for (Iterator<Map.Entry<Integer, Card>> it = cardsInView.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Card> entry = it.next();
+            if (entry.getKey() < first || entry.getKey() > last) {
+                spareCards.push(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    /** Draws one book's card: cover, title, author and loan status. */
+    private static final class Card extends JPanel {
+        private final JLabel coverLabel = new JLabel();
+        private final JLabel titleLabel = new JLabel();
+        private final JLabel authorLabel = new JLabel();
+        private final JLabel statusLabel = new JLabel();
+
+        Card() {
+            super(new BorderLayout(0, 10));
+            setBackground(UIFactory.COLOR_CARD);
+            setBorder(new EmptyBorder(15, 15, 15, 15));
+            coverLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            coverLabel.setPreferredSize(new Dimension(190, 220));
+            coverLabel.setBackground(new Color(233, 236, 239));
+            coverLabel.setForeground(UIFactory.COLOR_SECONDARY_TEXT);
+            coverLabel.setFont(UIFactory.FONT_BODY_BOLD);
+            titleLabel.setFont(UIFactory.FONT_BODY_BOLD);
+            titleLabel.setForeground(UIFactory.COLOR_PRIMARY_TEXT);
+            authorLabel.setFont(UIFactory.FONT_BODY_PLAIN);
+            authorLabel.setForeground(UIFactory.COLOR_SECONDARY_TEXT);
+            statusLabel.setFont(UIFactory.FONT_BODY_BOLD);
+
+            JPanel detailsPanel = new JPanel();
+            detailsPanel.setOpaque(false);
+            detailsPanel.setLayout(new BoxLayout(detailsPanel, BoxLayout.Y_AXIS));
+            detailsPanel.add(titleLabel);
+            detailsPanel.add(Box.createRigidArea(new Dimension(0, 5)));
+            detailsPanel.add(authorLabel);
+            detailsPanel.add(Box.createVerticalGlue());
+            detailsPanel.add(statusLabel);
+            add(coverLabel, BorderLayout.NORTH);
+            add(detailsPanel, BorderLayout.CENTER);
+        }
+
+        /**
+         * @param cover The book's cover, {@link CoverLoader#NO_COVER}, or null while it is being read.
+         */
+        void setBook(Book book, ImageIcon cover) {
+            setCover(cover);
+            titleLabel.setText("<html><p style='width:160px'>" + book.getTitle() + "</p></html>");
+            authorLabel.setText("by " + book.getAuthor());
+            statusLabel.setText(book.isOnLoan() ? "On Loan" : "Available");
+            statusLabel.setForeground(book.isOnLoan() ? UIFactory.COLOR_DANGER : UIFactory.COLOR_SUCCESS);
+        }
+
+        void setCover(ImageIcon cover) {
+            boolean hasCover = cover != null && cover != CoverLoader.NO_COVER;
+            coverLabel.setIcon(hasCover ? cover : null);
+            coverLabel.setText(cover == CoverLoader.NO_COVER ? "No Image" : null);
+            coverLabel.setOpaque(!hasCover);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package view;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import util.ConfigLoader;
+
+/**
+ * Attaches covers to many books at once.
+ *
+ * The source is a directory or a zip archive of images named after their book
+ * (978-0-00-000000-0.jpg), or a mapping file with one "isbn,image path" line per
+ * cover, paths being relative to the mapping file. Images are decoded, shrunk to
+ * every {@link ImageUtils.CoverSize} and encoded on a pool of threads, one per core
+ * unless covers.importThreads says otherwise, and stored in the cover pack as they
+ * finish. At most two images per thread, and no more than fit in a quarter of the
+ * heap, are in progress at a time, and each is decoded subsampled, so memory stays
+ * bounded however many covers there are.
+ *
+ * Images for ISBNs that aren't in the catalog, a second image for the same ISBN,
+ * and images that can't be read are reported as failures. Covers stored before the
+ * import is cancelled are kept.
+ */
+public final class CoverImporter {
+
+    /** How far the import has got. */
+    public record Progress(long done, long total) {}
+
+    /** An image that was not stored, named by its file, archive entry or mapping line. */
+    public record Failure(String source, String reason) {}
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "gif", "bmp");
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+    // Covers are decoded at no more than ImageUtils.MAX_DECODED_AREA_FACTOR times the
+    // 2x card's pixels, whatever their shape, so one image and its renditions take at
+    // most about this much.
+    private static final long MAX_BYTES_PER_IMAGE = 16L << 20;
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    /** Reads one cover image, subsampled as it is decoded. */
+    private interface CoverSource {
+        BufferedImage read() throws IOException;
+    }
+
+    private record Job(String isbn, String name, CoverSource source) {}
+
+    private CoverImporter() {}
+
+    /**
+     * Stores a cover for every image in a directory, zip archive or mapping file.
+     * @param source The directory, .zip file, or mapping file.
+     * @param catalog The ISBNs of every book in the catalog.
+     * @param progress Called on the calling thread as images are stored; may be null.
+     *                 Throwing from it cancels the import.
+     * @return How many covers were stored, what failed, and which books still have no cover.
+     * @throws IOException if the source can't be read.
+     */
+    public static ImportResult run(Path source, Set<String> catalog, Consumer<Progress> progress) throws IOException {
+        ImportResult result = new ImportResult();
+        if (Files.isDirectory(source)) {
+            execute(listDirectory(source, catalog, result), result, progress);
+        } else if (source.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            try (ZipFile zip = new ZipFile(source.toFile())) {
+                execute(listZip(zip, catalog, result), result, progress);
+            }
+        } else {
+            execute(readMapping(source, catalog, result), result, progress);
+        }
+        for (String isbn : catalog) {
+            if (!ImageUtils.hasCover(isbn)) result.missing.add(isbn);
+        }
+        Collections.sort(result.missing);
+        return result;
+    }
+
+    private static List<Job> listDirectory(Path directory, Set<String> catalog, ImportResult result) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path file : entries) {
+                if (Files.isRegularFile(file)) files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing(Path::getFileName));
+        Map<String, String> claimed = new HashMap<>();
+        List<Job> jobs = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String isbn = isbnOf(name);
+            if (isbn == null) continue;
+            if (claim(isbn, name, catalog, claimed, result)) {
+                jobs.add(new Job(isbn, name, () -> {
+                    try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+                        return ImageUtils.readCover(in);
+                    }
+                }));
+            }
+        }
+        return jobs;
+    }
+
+    private static List<Job> listZip(ZipFile zip, Set<String> catalog, ImportResult result) {
+        List<ZipEntry> entries = new ArrayList<>();
+        zip.stream().filter(entry -> !entry.isDirectory()).forEach(entries::add);
+        entries.sort(Comparator.comparing(ZipEntry::getName));
+        Map<String, String> claimed = new HashMap<>();
+        List<Job> jobs = new ArrayList<>();
+        for (ZipEntry entry : entries) {
+            String name = entry.getName();
+            String isbn = isbnOf(name.substring(name.lastIndexOf('/') + 1));
+            if (isbn == null) continue;
+            if (claim(isbn, name, catalog, claimed, result)) {
+                jobs.add(new Job(isbn, name, () -> {
+                    // ZipFile hands out streams to different entries from several threads safely.
+                    try (InputStream entryStream = zip.getInputStream(entry);
+                         ImageInputStream in = new MemoryCacheImageInputStream(entryStream)) {
+                        return ImageUtils.readCover(in);
+                    }
+                }));
+            }
+        }
+        return jobs;
+    }
+
+    private static List<Job> readMapping(Path mapping, Set<String> catalog, ImportResult result) throws IOException {
+        List<String> lines = Files.readAllLines(mapping, StandardCharsets.UTF_8);
+        Map<String, String> claimed = new HashMap<>();
+        List<Job> jobs = new ArrayList<>();
+        boolean first = true;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String name = "Line " + (i + 1);
+            int separator = line.indexOf(',') >= 0 ? line.indexOf(',') : line.indexOf('\t');
+            if (separator < 0) {
+                result.failures.add(new Failure(name, "Expected an ISBN and an image path separated by a comma."));
+                continue;
+            }
+            String isbn = unquote(line.substring(0, separator));
+            String path = unquote(line.substring(separator + 1));
+            if (first && isbn.equalsIgnoreCase("isbn")) { // a header row
+                first = false;
+                continue;
+            }
+            first = false;
+            Path file = mapping.resolveSibling(path);
+            if (isbn.isEmpty() || path.isEmpty()) {
+                result.failures.add(new Failure(name, "ISBN and image path are required."));
+            } else if (!Files.isRegularFile(file)) {
+                result.failures.add(new Failure(name, "File not found: " + path));
+            } else if (claim(isbn, name, catalog, claimed, result)) {
+                jobs.add(new Job(isbn, name + " (" + path + ")", () -> {
+                    try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+                        return ImageUtils.readCover(in);
+                    }
+                }));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Takes an ISBN for an image unless it isn't in the catalog or an earlier image has it.
+     * @return true if the image should be stored.
+     */
+    private static boolean claim(String isbn, String name, Set<String> catalog, Map<String, String> claimed, ImportResult result) {
+        if (!catalog.contains(isbn)) {
+            result.failures.add(new Failure(name, "No book with ISBN " + isbn + "."));
+            return false;
+        }
+        String earlier = claimed.putIfAbsent(isbn, name);
+        if (earlier != null) {
+            result.failures.add(new Failure(name, "Duplicate cover for ISBN " + isbn + " (first in " + earlier + ")."));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes, resizes and stores the covers on the pool, never more than a few per
+     * thread at once, reporting progress from this thread while they run.
+     */
+    private static void execute(List<Job> jobs, ImportResult result, Consumer<Progress> progress) throws IOException {
+        if (jobs.isEmpty()) return;
+        int threads = (int) Math.max(1, ConfigLoader.getLongProperty("covers.importThreads", Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "cover-import-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        // Images in progress may use up to a quarter of the heap between them.
+        long budget = Runtime.getRuntime().maxMemory() / 4 / MAX_BYTES_PER_IMAGE;
+        int slots = (int) Math.max(1, Math.min(threads * IN_FLIGHT_PER_THREAD, budget));
+        Semaphore inFlight = new Semaphore(slots);
+        AtomicLong done = new AtomicLong();
+        Map<Integer, Failure> failed = new ConcurrentSkipListMap<>(); // by position, to report in source order
+        long lastReport = 0;
+        boolean completed = false;
+        try {
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = jobs.get(i);
+                int position = i;
+                while (!inFlight.tryAcquire(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    report(progress, done, jobs.size());
+                }
+                pool.execute(() -> {
+                    try {
+                        ImageUtils.storeCover(job.isbn(), job.source().read());
+                        result.stored.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        // Image readers throw unchecked exceptions for some damaged files.
+                        String reason = e.getMessage() != null ? e.getMessage() : e.toString();
+                        failed.put(position, new Failure(job.name(), reason));
+                    } catch (OutOfMemoryError e) {
+                        failed.put(position, new Failure(job.name(), "Not enough memory to read the image."));
+                    } finally {
+                        done.incrementAndGet();
+                        inFlight.release();
+                    }
+                });
+                if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                    report(progress, done, jobs.size());
+                    lastReport = System.currentTimeMillis();
+                }
+            }
+            while (!inFlight.tryAcquire(slots, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                report(progress, done, jobs.size());
+            }
+            report(progress, done, jobs.size());
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Cover import interrupted.");
+        } finally {
+            // On cancellation, let the images in progress finish so nothing is stored after the flush.
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            result.failures.addAll(failed.values());
+            try {
+                ImageUtils.flushCovers();
+            } catch (IOException e) {
+                if (completed) throw e;
+                // Don't hide the cancellation or error that ended the import.
+                System.err.println("Error saving imported covers: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void report(Consumer<Progress> progress, AtomicLong done, long total) {
+        if (progress != null) progress.accept(new Progress(done.get(), total));
+    }
+
+    /**
+     * @param fileName An image's file name, e.g. 978-0-00-000000-0.jpg.
+     * @return The ISBN it names, or null if it isn't an image or is hidden.
+     */
+    private static String isbnOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot <= 0 || fileName.startsWith(".")) return null;
+        String extension = fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return IMAGE_EXTENSIONS.contains(extension) ? fileName.substring(0, dot).strip() : null;
+    }
+
+    private static String unquote(String field) {
+        String value = field.strip();
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1).strip() : value;
+    }
+
+    /**
+     * The outcome of a cover import.
+     */
+    public static final class ImportResult {
+        private final AtomicLong stored = new AtomicLong();
+        private final List<Failure> failures = new ArrayList<>();
+        private final List<String> missing = new ArrayList<>();
+
+        /** @return How many covers were stored. */
+        public long getStoredCount() {
+            return stored.get();
+        }
+
+        /** @return The images that were not stored, by source name. */
+        public List<Failure> getFailures() {
+            return Collections.unmodifiableList(failures);
+        }
+
+        /** @return The ISBNs of catalog books that still have no cover, in order. */
+        public List<String> getMissing() {
+            return Collections.unmodifiableList(missing);
+        }
+    }
+}
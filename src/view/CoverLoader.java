@@ -0,0 +1,150 @@
+package view;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Reads book covers on a background thread and keeps the most recently used ones.
+ *
+ * The gallery never reads covers itself. It asks for the covers it is showing,
+ * followed by those just beyond the edge of the view, and draws a placeholder for
+ * any that aren't ready. Each request replaces the previous one, so covers that
+ * scrolled away before their turn are never read. Listeners hear about each cover
+ * on the event thread once it is ready.
+ *
+ * Decoded covers are cached by the content of their image rather than by book, so
+ * editions that share cover art are decoded and held in memory once.
+ */
+final class CoverLoader {
+
+    /** Cached for books that have no cover, so their file isn't looked for again. */
+    static final ImageIcon NO_COVER = new ImageIcon();
+
+    private static final int MAX_CACHED = 200; // about 33 MB of 190x220 covers, four times that at 2x
+    private static final int MAX_BOOKS = 10_000;
+    private static CoverLoader shared;
+
+    private final Map<String, ImageIcon> cache = new LinkedHashMap<>(MAX_CACHED, 0.75f, true) { // by content key
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImageIcon> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+    private final Map<String, String> contentByIsbn = new LinkedHashMap<>(256, 0.75f, true) { // "" for no cover
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_BOOKS;
+        }
+    };
+    private final LinkedHashSet<String> wanted = new LinkedHashSet<>(); // still to read, most urgent first
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private String reading; // the cover being read; cleared if forgotten meanwhile
+
+    private CoverLoader() {
+        Thread worker = new Thread(this::run, "library-cover-loader");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return The loader shared by every view that shows covers.
+     */
+    static synchronized CoverLoader shared() {
+        if (shared == null) shared = new CoverLoader();
+        return shared;
+    }
+
+    /**
+     * @param isbn The ISBN of a book.
+     * @return Its cover if it has been read, {@link #NO_COVER} if it has none, or null if not read yet.
+     */
+    synchronized ImageIcon cached(String isbn) {
+        String content = contentByIsbn.get(isbn);
+        if (content == null) return null;
+        return content.isEmpty() ? NO_COVER : cache.get(content);
+    }
+
+    /**
+     * Replaces the covers waiting to be read. Covers already read, or being read, are skipped.
+     * @param isbns The covers wanted, most urgent first.
+     */
+    synchronized void want(List<String> isbns) {
+        wanted.clear();
+        for (String isbn : isbns) {
+            if (cached(isbn) == null && !isbn.equals(reading)) wanted.add(isbn);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Drops a cover that has changed on disk, so it is read again when next wanted.
+     * Its decoded image stays cached for any other book that shares it.
+     * @param isbn The ISBN of the book.
+     */
+    synchronized void forget(String isbn) {
+        contentByIsbn.remove(isbn);
+        if (isbn.equals(reading)) reading = null;
+    }
+
+    /**
+     * @param listener Called on the event thread with the ISBN of each cover once it is ready.
+     */
+    void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    private void run() {
+        while (true) {
+            String isbn;
+            synchronized (this) {
+                while (wanted.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                Iterator<String> next = wanted.iterator();
+                isbn = next.next();
+                next.remove();
+                reading = isbn;
+            }
+            String content = ImageUtils.coverContentKey(isbn);
+            ImageIcon cover = null;
+            boolean decoded = false;
+            if (content != null) {
+                synchronized (this) {
+                    cover = cache.get(content);
+                }
+                if (cover == null) {
+                    cover = ImageUtils.loadBookImage(isbn);
+                    decoded = true;
+                }
+            }
+            boolean replaced = decoded && !content.equals(ImageUtils.coverContentKey(isbn));
+            synchronized (this) {
+                if (!isbn.equals(reading)) continue; // forgotten while it was read
+                reading = null;
+                if (replaced) continue; // saved again while it was read; wanted again on the next refresh
+                if (content == null || cover == null) {
+                    contentByIsbn.put(isbn, "");
+                } else {
+                    contentByIsbn.put(isbn, content);
+                    if (decoded) cache.put(content, cover);
+                }
+            }
+            SwingUtilities.invokeLater(() -> listeners.forEach(listener -> listener.accept(isbn)));
+        }
+    }
+}
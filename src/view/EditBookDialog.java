@@ -91,7 +91,7 @@ public class EditBookDialog extends JDialog {
         fileChooser.setFileFilter(new FileNameExtensionFilter("Image Files", "jpg", "png", "gif", "jpeg"));
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             newImagePath = fileChooser.getSelectedFile().getAbsolutePath();
-            ImageIcon icon = new ImageIcon(new ImageIcon(newImagePath).getImage().getScaledInstance(190, 220, Image.SCALE_SMOOTH));
+            ImageIcon icon = ImageUtils.loadPreview(newImagePath);
             imagePreviewLabel.setText("");
             imagePreviewLabel.setIcon(icon);
         }
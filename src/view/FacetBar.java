@@ -0,0 +1,114 @@
+package view;
+
+import java.awt.*;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.swing.*;
+import model.Facet;
+import model.FacetFilter;
+
+/**
+ * A row of filter controls for the book facets: type, details, a range of
+ * publication years and loan status. Every choice shows how many books it
+ * would leave, given the search and the other choices.
+ */
+public class FacetBar extends JPanel {
+
+    private final Map<Facet, JComboBox<Choice>> choices = new EnumMap<>(Facet.class);
+    private final JComboBox<Choice> fromYear;
+    private final JComboBox<Choice> toYear;
+    private Runnable filterListener = () -> {};
+    private boolean updating; // set while the choices are replaced, so that isn't taken for a user change
+
+    public FacetBar() {
+        setLayout(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        setOpaque(false);
+        choices.put(Facet.TYPE, addChoice("Type", "All types"));
+        choices.put(Facet.DETAILS, addChoice("Details", "All genres, subjects, categories"));
+        fromYear = addChoice("Published", "Any year");
+        toYear = addChoice("to", "Any year");
+        choices.put(Facet.STATUS, addChoice("Status", "Any status"));
+    }
+
+    /**
+     * @param listener Called whenever the user changes a choice.
+     */
+    public void setFilterListener(Runnable listener) {
+        this.filterListener = listener;
+    }
+
+    /**
+     * @return The facet values currently chosen.
+     */
+    public FacetFilter getFilter() {
+        String status = selected(choices.get(Facet.STATUS));
+        String fromValue = selected(fromYear);
+        String toValue = selected(toYear);
+        return new FacetFilter(
+                selected(choices.get(Facet.TYPE)),
+                selected(choices.get(Facet.DETAILS)),
+                fromValue != null ? Integer.valueOf(fromValue) : null,
+                toValue != null ? Integer.valueOf(toValue) : null,
+                status != null ? status.equals(Facet.ON_LOAN) : null);
+    }
+
+    /**
+     * Replaces the choices with the values found by the latest filter, keeping what is selected.
+     * @param counts For each facet, how many books each value would leave.
+     */
+    public void showCounts(Map<Facet, Map<String, Integer>> counts) {
+        updating = true;
+        try {
+            for (Map.Entry<Facet, JComboBox<Choice>> entry : choices.entrySet()) {
+                fill(entry.getValue(), counts.getOrDefault(entry.getKey(), Map.of()));
+            }
+            fill(fromYear, counts.getOrDefault(Facet.YEAR, Map.of()));
+            fill(toYear, counts.getOrDefault(Facet.YEAR, Map.of()));
+        } finally {
+            updating = false;
+        }
+    }
+
+    private JComboBox<Choice> addChoice(String label, String anyText) {
+        JComboBox<Choice> comboBox = UIFactory.createComboBox(new Choice[] {new Choice(null, anyText, -1)});
+        comboBox.addActionListener(e -> {
+            if (!updating) filterListener.run();
+        });
+        add(UIFactory.createFormLabel(label));
+        add(comboBox);
+        return comboBox;
+    }
+
+    private static void fill(JComboBox<Choice> comboBox, Map<String, Integer> counts) {
+        Choice any = comboBox.getItemAt(0);
+        String selected = selected(comboBox);
+        DefaultComboBoxModel<Choice> model = new DefaultComboBoxModel<>();
+        int total = 0;
+        for (int count : counts.values()) total += count;
+        model.addElement(new Choice(null, any.text(), total));
+        for (Map.Entry<String, Integer> value : counts.entrySet()) {
+            model.addElement(new Choice(value.getKey(), value.getKey(), value.getValue()));
+        }
+        if (selected != null && !counts.containsKey(selected)) {
+            model.addElement(new Choice(selected, selected, 0)); // nothing left with it, but it stays chosen
+        }
+        for (int i = 0; i < model.getSize(); i++) {
+            if (Objects.equals(model.getElementAt(i).value(), selected)) model.setSelectedItem(model.getElementAt(i));
+        }
+        comboBox.setModel(model);
+    }
+
+    private static String selected(JComboBox<Choice> comboBox) {
+        Choice choice = (Choice) comboBox.getSelectedItem();
+        return choice != null ? choice.value() : null;
+    }
+
+    /** One entry of a combo box: a facet value (null for any) and how many books it leaves. */
+    private record Choice(String value, String text, int count) {
+        @Override
+        public String toString() {
+            return count < 0 ? text : String.format("%s (%,d)", text, count);
+        }
+    }
+}
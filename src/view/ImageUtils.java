@@ -3,102 +3,433 @@ package view;
 import java.awt.*;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
+import util.CoverPack;
 
 /**
  * Utility class for handling book cover and profile images.
+ * Covers are kept in a single {@link CoverPack} (book_covers.pack) rather than a file
+ * per image; covers in the old book_covers directory are copied into it when the
+ * pack is first created. The pack stores an image once however many books use it.
+ *
+ * Images the user picks are never decoded at full size: they are read subsampled
+ * to about twice the size they are needed at, so a large photo costs a few
+ * megabytes of memory rather than hundreds.
  */
 public class ImageUtils {
 
+    /** The size profile pictures are shown at, in the sidebar and the settings dialog. */
+    public static final int AVATAR_SIZE = 80;
+    private static final int AVATAR_PIXELS = 2 * AVATAR_SIZE; // enough for a 2x screen
+    // An image is never decoded at more than this many times the pixels it is needed
+    // at, however narrow or tall it is.
+    static final int MAX_DECODED_AREA_FACTOR = 16;
+
     private static final String COVERS_DIR = "book_covers";
-    private static final int COVER_WIDTH = 190;
-    private static final int COVER_HEIGHT = 220;
+    private static final Path COVER_PACK = Paths.get("book_covers.pack");
+    private static CoverPack coverPack;
 
-    public static void saveBookImage(String isbn, String sourcePath) {
-        try {
-            File destDir = new File(COVERS_DIR);
-            if (!destDir.exists()) destDir.mkdir();
-
-            BufferedImage originalImage = ImageIO.read(new File(sourcePath));
-            Image resizedImage = originalImage.getScaledInstance(COVER_WIDTH, COVER_HEIGHT, Image.SCALE_SMOOTH);
-            
-            BufferedImage outputImage = new BufferedImage(COVER_WIDTH, COVER_HEIGHT, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = outputImage.createGraphics();
-            g2d.drawImage(resizedImage, 0, 0, null);
-            g2d.dispose();
+    /**
+     * The renditions a cover is saved in, each drawn at exactly its own size.
+     * CARD is stored under the bare ISBN, as covers were before renditions existed.
+     */
+    public enum CoverSize {
+        THUMBNAIL(38, 44, "_thumb"),
+        CARD(190, 220, ""),
+        CARD_2X(380, 440, "@2x");
+
+        private final int width;
+        private final int height;
+        private final String suffix;
+
+        CoverSize(int width, int height, String suffix) {
+            this.width = width;
+            this.height = height;
+            this.suffix = suffix;
+        }
+
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+
+        private String key(String isbn) {
+            return isbn + suffix;
+        }
+    }
 
-            File outputFile = new File(destDir, isbn + ".png");
-            ImageIO.write(outputImage, "png", outputFile);
+    /**
+     * Saves a book's cover in every {@link CoverSize}. Each rendition is shrunk from
+     * the next larger one by halving, so the source image is only read once, and
+     * only at about twice the largest rendition's size.
+     * @param isbn The ISBN of the book.
+     * @param sourcePath The image chosen for the cover.
+     */
+    public static void saveBookImage(String isbn, String sourcePath) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(sourcePath))) {
+            storeCover(isbn, readCover(in));
+            flushCovers();
         } catch (IOException e) {
             System.err.println("Error saving image for ISBN " + isbn + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Reads an image at about twice the size of the largest rendition, ready for {@link #storeCover}.
+     * @param in The image.
+     * @return The image, subsampled while it was decoded.
+     */
+    static BufferedImage readCover(ImageInputStream in) throws IOException {
+        return readScaled(in, CoverSize.CARD_2X.width, CoverSize.CARD_2X.height, false);
+    }
+
+    /**
+     * Makes and stores every rendition of a cover. It is written but not synced; call
+     * {@link #flushCovers} once a batch of covers is stored. Safe to call from several
+     * threads at once.
+     * @param isbn The ISBN of the book.
+     * @param original The cover image, e.g. from {@link #readCover}.
+     */
+    static void storeCover(String isbn, BufferedImage original) throws IOException {
+        CoverPack pack = covers();
+        if (pack == null) throw new IOException("the cover pack can't be opened");
+        BufferedImage card2x = scaleDown(original, CoverSize.CARD_2X.width, CoverSize.CARD_2X.height);
+        BufferedImage card = scaleDown(card2x, CoverSize.CARD.width, CoverSize.CARD.height);
+        BufferedImage thumbnail = scaleDown(card, CoverSize.THUMBNAIL.width, CoverSize.THUMBNAIL.height);
+        byte[] card2xBytes = encode(card2x);
+        byte[] cardBytes = encode(card);
+        byte[] thumbnailBytes = encode(thumbnail);
+        pack.put(CoverSize.CARD_2X.key(isbn), card2xBytes);
+        pack.put(CoverSize.CARD.key(isbn), cardBytes);
+        pack.put(CoverSize.THUMBNAIL.key(isbn), thumbnailBytes);
+        CoverLoader.shared().forget(isbn);
+    }
+
+    /**
+     * Makes every cover stored so far durable.
+     */
+    static void flushCovers() throws IOException {
+        CoverPack pack = covers();
+        if (pack != null) pack.force();
+    }
+
+    /**
+     * @param isbn The ISBN of a book.
+     * @return true if a cover is stored for it.
+     */
+    public static boolean hasCover(String isbn) {
+        CoverPack pack = covers();
+        return pack != null && pack.contains(CoverSize.CARD.key(isbn));
+    }
+
+    /**
+     * Reads a book's cover at card size, in the rendition that matches the screen's scale.
+     * Views that show many covers get them through the {@link CoverLoader} rather than
+     * calling this on the event thread.
+     * @param isbn The ISBN of the book.
+     * @return The cover, or null if the book has none.
+     */
     public static ImageIcon loadBookImage(String isbn) {
-        File imageFile = new File(COVERS_DIR, isbn + ".png");
-        if (imageFile.exists()) {
-            return new ImageIcon(new ImageIcon(imageFile.getAbsolutePath()).getImage().getScaledInstance(COVER_WIDTH, COVER_HEIGHT, Image.SCALE_SMOOTH));
+        return loadBookImage(isbn, CoverSize.CARD, screenScale());
+    }
+
+    /**
+     * Reads a book's cover in the rendition with exactly the pixels a size needs at a
+     * scale factor, e.g. CARD_2X for a card on a 2x screen. The icon always measures
+     * the requested size, so painting it doesn't scale. Covers saved before renditions
+     * existed only have a card file; other sizes are then made from it.
+     * @param isbn The ISBN of the book.
+     * @param size The size the cover is shown at.
+     * @param scale The screen's scale factor.
+     * @return The cover, or null if the book has none.
+     */
+    public static ImageIcon loadBookImage(String isbn, CoverSize size, double scale) {
+        CoverPack pack = covers();
+        if (pack == null) return null;
+        CoverSize rendition = size == CoverSize.CARD && scale > 1 ? CoverSize.CARD_2X : size;
+        String key = storedKey(pack, isbn, rendition);
+        byte[] data = key != null ? pack.get(key) : null;
+        if (data == null) return null;
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+            if (image == null) return null;
+            if (image.getWidth() != rendition.width || image.getHeight() != rendition.height) {
+                image = scaleDown(image, rendition.width, rendition.height);
+            }
+            return new SizedIcon(image, size.width, size.height);
+        } catch (IOException e) {
+            System.err.println("Error loading image for ISBN " + isbn + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Identifies the image {@link #loadBookImage(String)} would read for a book by its
+     * content, so books that share a cover can share one decoded copy of it.
+     * @param isbn The ISBN of the book.
+     * @return The content key, or null if the book has no cover.
+     */
+    static String coverContentKey(String isbn) {
+        CoverPack pack = covers();
+        if (pack == null) return null;
+        CoverSize rendition = screenScale() > 1 ? CoverSize.CARD_2X : CoverSize.CARD;
+        String key = storedKey(pack, isbn, rendition);
+        return key != null ? pack.contentKey(key) : null;
+    }
+
+    /**
+     * Removes a book's cover in every rendition. Images other books share stay stored.
+     * @param isbn The ISBN of the book.
+     */
+    public static void deleteBookImage(String isbn) {
+        CoverPack pack = covers();
+        if (pack == null) return;
+        try {
+            for (CoverSize size : CoverSize.values()) pack.remove(size.key(isbn));
+            pack.force();
+            CoverLoader.shared().forget(isbn);
+        } catch (IOException e) {
+            System.err.println("Error deleting image for ISBN " + isbn + ": " + e.getMessage());
+        }
+    }
+
+    /** The key a rendition is stored under, falling back to the card for covers saved before renditions existed. */
+    private static String storedKey(CoverPack pack, String isbn, CoverSize rendition) {
+        if (pack.contains(rendition.key(isbn))) return rendition.key(isbn);
+        return pack.contains(CoverSize.CARD.key(isbn)) ? CoverSize.CARD.key(isbn) : null;
+    }
+
+    /**
+     * Opens the cover pack the first time covers are needed. A new pack starts with
+     * the covers kept as files by earlier versions; the files are left where they
+     * are and not read again.
+     * @return The pack, or null if it can't be opened.
+     */
+    private static synchronized CoverPack covers() {
+        if (coverPack == null) {
+            try {
+                boolean created = !Files.exists(COVER_PACK);
+                coverPack = CoverPack.open(COVER_PACK);
+                if (created) {
+                    int copied = coverPack.importFiles(Paths.get(COVERS_DIR), ".png");
+                    if (copied > 0) System.out.println("Copied " + copied + " cover images into " + COVER_PACK);
+                }
+            } catch (IOException e) {
+                System.err.println("Error opening cover pack: " + e.getMessage());
+            }
         }
-        return null;
+        return coverPack;
     }
 
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an image the user picked, shrunk to card size for a preview.
+     * @param path The image file.
+     * @return The preview, or null if the file can't be read as an image.
+     */
+    public static ImageIcon loadPreview(String path) {
+        try {
+            BufferedImage image = readScaled(new File(path), CoverSize.CARD.width, CoverSize.CARD.height, false);
+            return new ImageIcon(scaleDown(image, CoverSize.CARD.width, CoverSize.CARD.height));
+        } catch (IOException e) {
+            System.err.println("Error reading image " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads an image at no more than about twice the given size. The reader skips
+     * rows and columns as it decodes (subsampling), so the full-size image is never
+     * held in memory; the caller shrinks the result the rest of the way smoothly.
+     * Very wide or tall images are subsampled further so that the result never has
+     * more than {@link #MAX_DECODED_AREA_FACTOR} times the pixels of the given size.
+     * @param file The image file.
+     * @param width The width the image is needed at.
+     * @param height The height the image is needed at.
+     * @param square Whether to read only the largest centred square, as for an avatar.
+     * @return The image, at least the given size unless the file is smaller.
+     */
+    static BufferedImage readScaled(File file, int width, int height, boolean square) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            return readScaled(in, width, height, square);
+        }
+    }
+
+    private static BufferedImage readScaled(ImageInputStream in, int width, int height, boolean square) throws IOException {
+        if (in == null) throw new IOException("can't read the image");
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) throw new IOException("unsupported image format");
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(in, true, true);
+            int sourceWidth = reader.getWidth(0);
+            int sourceHeight = reader.getHeight(0);
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (square) {
+                int side = Math.min(sourceWidth, sourceHeight);
+                param.setSourceRegion(new Rectangle((sourceWidth - side) / 2, (sourceHeight - side) / 2, side, side));
+                sourceWidth = sourceHeight = side;
+            }
+            // Keeping twice the pixels needed leaves the halving in scaleDown
+            // enough detail to smooth over what subsampling skipped.
+            int period = Math.max(1, Math.min(sourceWidth / (2 * width), sourceHeight / (2 * height)));
+            long maxPixels = (long) MAX_DECODED_AREA_FACTOR * width * height;
+            while ((long) ceilDiv(sourceWidth, period) * ceilDiv(sourceHeight, period) > maxPixels) period++;
+            param.setSourceSubsampling(period, period, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * @return How many device pixels the default screen has per unit of layout, e.g. 2 on a Retina display.
+     */
+    static double screenScale() {
+        if (GraphicsEnvironment.isHeadless()) return 1;
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().getDefaultTransform().getScaleX();
+    }
+
+    /**
+     * Resizes an image to exactly the given size. Large reductions are done by halving
+     * with bilinear filtering and finishing with one last bilinear step, which looks as
+     * good as area averaging at a fraction of the cost of getScaledInstance.
+     */
+    static BufferedImage scaleDown(BufferedImage image, int width, int height) {
+        BufferedImage current = image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        do {
+            w = w / 2 >= width ? w / 2 : width;
+            h = h / 2 >= height ? h / 2 : height;
+            BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = step.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(current, 0, 0, w, h, null);
+            g2d.dispose();
+            current = step;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    /** An image drawn into a box of a given size, e.g. a 2x rendition into its card's space. */
+    private static class SizedIcon extends ImageIcon {
+        private final int width;
+        private final int height;
+
+        SizedIcon(Image image, int width, int height) {
+            super(image);
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getIconWidth() { return width; }
+
+        @Override
+        public int getIconHeight() { return height; }
+
+        @Override
+        public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+            g.drawImage(getImage(), x, y, width, height, c);
+        }
+    }
+
+    /**
+     * Saves a profile picture as the centred square of the chosen image, shrunk to
+     * what the sidebar shows on a 2x screen, so loading it never decodes the original.
+     * @param username The user it belongs to.
+     * @param sourcePath The image chosen for it.
+     */
     public static void saveProfilePicture(String username, String sourcePath) {
         try {
-            BufferedImage originalImage = ImageIO.read(new File(sourcePath));
+            BufferedImage square = readScaled(new File(sourcePath), AVATAR_PIXELS, AVATAR_PIXELS, true);
             File outputFile = new File("profile_" + username + ".png");
-            ImageIO.write(originalImage, "png", outputFile);
+            ImageIO.write(scaleDown(square, AVATAR_PIXELS, AVATAR_PIXELS), "png", outputFile);
         } catch (IOException e) {
             System.err.println("Error saving profile picture for " + username + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Reads a profile picture, or draws the user's initial if there is none, cut to a circle.
+     * @param username The user.
+     * @param size The size it is shown at.
+     * @return The picture, measuring size by size.
+     */
     public static ImageIcon loadProfilePicture(String username, int size) {
+        int pixels = (int) Math.round(size * screenScale());
         try {
             File profilePicFile = new File("profile_" + username + ".png");
             BufferedImage master;
             if (profilePicFile.exists()) {
-                master = ImageIO.read(profilePicFile);
+                // Pictures saved by older versions are full size; reading them scaled keeps that cheap too.
+                master = scaleDown(readScaled(profilePicFile, pixels, pixels, true), pixels, pixels);
             } else {
                 // Create a default placeholder image if none exists
-                master = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+                master = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB);
                 Graphics2D g2d = master.createGraphics();
                 g2d.setColor(UIFactory.COLOR_ACCENT);
-                g2d.fillRect(0, 0, size, size);
+                g2d.fillRect(0, 0, pixels, pixels);
                 g2d.setColor(Color.WHITE);
-                g2d.setFont(UIFactory.FONT_TITLE.deriveFont((float)size / 2));
+                g2d.setFont(UIFactory.FONT_TITLE.deriveFont((float) pixels / 2));
                 String initial = username.substring(0, 1).toUpperCase();
                 FontMetrics fm = g2d.getFontMetrics();
-                int x = (size - fm.stringWidth(initial)) / 2;
-                int y = (size - fm.getHeight()) / 2 + fm.getAscent();
+                int x = (pixels - fm.stringWidth(initial)) / 2;
+                int y = (pixels - fm.getHeight()) / 2 + fm.getAscent();
                 g2d.drawString(initial, x, y);
                 g2d.dispose();
             }
 
             // Create a circular version of the image
-            int diameter = Math.min(master.getWidth(), master.getHeight());
-            BufferedImage mask = new BufferedImage(master.getWidth(), master.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = mask.createGraphics();
+            BufferedImage masked = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = masked.createGraphics();
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2d.fill(new Ellipse2D.Double(0, 0, diameter, diameter));
+            g2d.fill(new Ellipse2D.Double(0, 0, pixels, pixels));
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_IN));
+            g2d.drawImage(master, 0, 0, null);
             g2d.dispose();
 
-            BufferedImage masked = new BufferedImage(diameter, diameter, BufferedImage.TYPE_INT_ARGB);
-            g2d = masked.createGraphics();
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            int x = (diameter - master.getWidth()) / 2;
-            int y = (diameter - master.getHeight()) / 2;
-            g2d.drawImage(master, x, y, null);
-            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_IN));
-            g2d.drawImage(mask, 0, 0, null);
-            g2d.dispose();
+            return new SizedIcon(masked, size, size);
 
-            return new ImageIcon(masked.getScaledInstance(size, size, Image.SCALE_SMOOTH));
+        } catch (IOException e) {
+            System.err.println("Error loading profile picture for " + username + ": " + e.getMessage());
+            return null;
+        }
+    }
 
+    /**
+     * Reads an image the user picked as a profile picture, for a preview.
+     * @param path The image file.
+     * @param size The size it is shown at.
+     * @return The preview, or null if the file can't be read as an image.
+     */
+    public static ImageIcon loadAvatarPreview(String path, int size) {
+        try {
+            return new ImageIcon(scaleDown(readScaled(new File(path), size, size, true), size, size));
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Error reading image " + path + ": " + e.getMessage());
             return null;
         }
     }
@@ -6,7 +6,7 @@ import java.awt.event.MouseEvent;
 import java.util.List;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 import model.Book;
 
 /**
@@ -15,12 +15,16 @@ import model.Book;
 public class InventoryPanel extends JPanel {
 
     private JTable booksTable;
-    private DefaultTableModel booksTableModel;
+    private BookTableModel booksTableModel;
     private JButton deleteButton;
     private JButton exportButton; // New button
+    private JButton importButton;
+    private JButton importCoversButton;
     private JPopupMenu contextMenu; // New context menu
     private JMenuItem editMenuItem;
     private JTextField searchField;
+    private JLabel suggestionLabel;
+    private FacetBar facetBar;
 
     public InventoryPanel() {
         setLayout(new BorderLayout(20, 20));
@@ -35,20 +39,26 @@ public class InventoryPanel extends JPanel {
         
         searchField = UIFactory.createTextField();
         searchField.setPreferredSize(new Dimension(300, 40));
+        suggestionLabel = UIFactory.createSuggestionLabel();
         
         headerPanel.add(titleLabel, BorderLayout.WEST);
-        headerPanel.add(searchField, BorderLayout.EAST);
-        add(headerPanel, BorderLayout.NORTH);
+        JPanel searchPanel = new JPanel(new BorderLayout(0, 4));
+        searchPanel.setOpaque(false);
+        searchPanel.add(searchField, BorderLayout.NORTH);
+        searchPanel.add(suggestionLabel, BorderLayout.SOUTH);
+        headerPanel.add(searchPanel, BorderLayout.EAST);
+        facetBar = new FacetBar();
+        JPanel topPanel = new JPanel(new BorderLayout(0, 15));
+        topPanel.setOpaque(false);
+        topPanel.add(headerPanel, BorderLayout.NORTH);
+        topPanel.add(facetBar, BorderLayout.SOUTH);
+        add(topPanel, BorderLayout.NORTH);
 
         // --- Table Panel ---
         JPanel tableCard = UIFactory.createCardPanel();
         tableCard.setLayout(new BorderLayout());
         
-        String[] columnNames = {"ISBN", "Title", "Author", "Year", "Type", "Details", "Status"};
-        booksTableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) { return false; }
-        };
+        booksTableModel = new BookTableModel();
         booksTable = UIFactory.createTable(booksTableModel);
         
         // --- Right-Click Menu ---
@@ -79,25 +89,22 @@ public class InventoryPanel extends JPanel {
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
         buttonPanel.setOpaque(false);
 
+        importButton = UIFactory.createSecondaryButton("Import...");
+        importCoversButton = UIFactory.createSecondaryButton("Import Covers...");
         exportButton = UIFactory.createSecondaryButton("Export to CSV");
         deleteButton = UIFactory.createSecondaryButton("Delete Selected");
         deleteButton.setBackground(UIFactory.COLOR_DANGER);
         deleteButton.setForeground(Color.WHITE);
 
+        buttonPanel.add(importButton);
+        buttonPanel.add(importCoversButton);
         buttonPanel.add(exportButton);
         buttonPanel.add(deleteButton);
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
     public void refreshBookTable(List<Book> books) {
-        booksTableModel.setRowCount(0);
-        for (Book book : books) {
-            booksTableModel.addRow(new Object[]{
-                    book.getIsbn(), book.getTitle(), book.getAuthor(),
-                    book.getPublicationYear(), book.getType(),
-                    book.getDetails(), book.isOnLoan() ? "On Loan" : "Available"
-            });
-        }
+        booksTableModel.setBooks(books);
     }
 
     public String getSelectedBookIsbn() {
@@ -109,6 +116,47 @@ public class InventoryPanel extends JPanel {
     public JMenuItem getEditMenuItem() { return editMenuItem; }
     public JButton getDeleteButton() { return deleteButton; }
     public JButton getExportButton() { return exportButton; }
+    public JButton getImportButton() { return importButton; }
+    public JButton getImportCoversButton() { return importCoversButton; }
     public JTable getBooksTable() { return booksTable; }
     public JTextField getSearchField() { return searchField; }
+    public JLabel getSuggestionLabel() { return suggestionLabel; }
+    public FacetBar getFacetBar() { return facetBar; }
+
+    /**
+     * Table model that reads rows straight from the book list, so only the rows
+     * the table actually paints are ever looked at.
+     */
+    private static class BookTableModel extends AbstractTableModel {
+        private static final String[] COLUMN_NAMES = {"ISBN", "Title", "Author", "Year", "Type", "Details", "Status"};
+        private List<Book> books = List.of();
+
+        void setBooks(List<Book> books) {
+            this.books = books;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() { return books.size(); }
+
+        @Override
+        public int getColumnCount() { return COLUMN_NAMES.length; }
+
+        @Override
+        public String getColumnName(int column) { return COLUMN_NAMES[column]; }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Book book = books.get(row);
+            return switch (column) {
+                case 0 -> book.getIsbn();
+                case 1 -> book.getTitle();
+                case 2 -> book.getAuthor();
+                case 3 -> book.getPublicationYear();
+                case 4 -> book.getType();
+                case 5 -> book.getDetails();
+                default -> book.isOnLoan() ? "On Loan" : "Available";
+            };
+        }
+    }
 }
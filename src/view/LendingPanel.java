@@ -7,6 +7,7 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableModel;
 import model.Book;
+import model.Patron;
 
 /**
  * Redesigned panel for handling book lending and returns.
@@ -15,6 +16,7 @@ public class LendingPanel extends JPanel {
 
     private JComboBox<Book> bookComboBox;
     private JTextField borrowerField;
+    private JLabel patronLabel;
     private JButton lendButton;
     private JTable loansTable;
     private DefaultTableModel loansTableModel;
@@ -55,8 +57,14 @@ public class LendingPanel extends JPanel {
         gbc.gridx = 1;
         lendingFormCard.add(borrowerField, gbc);
 
+        patronLabel = new JLabel(" ");
+        patronLabel.setFont(UIFactory.FONT_BODY_PLAIN);
+        patronLabel.setForeground(UIFactory.COLOR_SECONDARY_TEXT);
+        gbc.gridy = 2;
+        lendingFormCard.add(patronLabel, gbc);
+
         lendButton = UIFactory.createPrimaryButton("Lend Selected Book");
-        gbc.gridy = 2; gbc.gridx = 1;
+        gbc.gridy = 3; gbc.gridx = 1;
         gbc.anchor = GridBagConstraints.EAST;
         lendingFormCard.add(lendButton, gbc);
         
@@ -89,6 +97,7 @@ public class LendingPanel extends JPanel {
 
     public Book getSelectedBookToLend() { return (Book) bookComboBox.getSelectedItem(); }
     public String getBorrowerName() { return borrowerField.getText().trim(); }
+    public JTextField getBorrowerField() { return borrowerField; }
     public JButton getLendButton() { return lendButton; }
     public JButton getReturnButton() { return returnButton; }
 
@@ -122,6 +131,27 @@ public class LendingPanel extends JPanel {
     public void clearLendForm() {
         borrowerField.setText("");
     }
+
+    /**
+     * Describes the patron whose name is being entered.
+     * @param patron The registered patron, or null for a new borrower.
+     * @param books What the patron has out.
+     * @param maxLoans How many books a patron may have out; 0 for no limit.
+     */
+    public void showPatron(Patron patron, List<Book> books, int maxLoans) {
+        if (patron == null) {
+            patronLabel.setText(getBorrowerName().isEmpty() ? " " : "New patron");
+            return;
+        }
+        StringBuilder text = new StringBuilder("<html>Patron #").append(patron.id()).append(" has ").append(books.size());
+        if (maxLoans > 0) text.append(" of ").append(maxLoans);
+        text.append(books.size() == 1 ? " book" : " books").append(" out");
+        for (int i = 0; i < books.size() && i < 3; i++) {
+            text.append(i == 0 ? ": " : ", ").append(books.get(i).getTitle());
+        }
+        if (books.size() > 3) text.append(", \u2026");
+        patronLabel.setText(text.append("</html>").toString());
+    }
     
     private static class BookCellRenderer extends DefaultListCellRenderer {
         @Override
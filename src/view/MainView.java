@@ -4,15 +4,25 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Path2D;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import model.Book;
+import model.LoanSummary;
 
 /**
  * The main frame of the application, redesigned with a modern sidebar navigation,
  * user profile section, and welcome message.
+ *
+ * Content panels are built the first time their card is shown, and only the visible
+ * panel is refreshed when the data changes, reading just the data it shows. Hidden
+ * panels are marked dirty and caught up when the user navigates to them.
  */
 public class MainView extends JFrame {
 
@@ -25,6 +35,17 @@ public class MainView extends JFrame {
     
     private JPanel contentPanel;
     private CardLayout cardLayout;
+    private final Map<String, JPanel> createdPanels = new HashMap<>();
+    private final Set<String> dirtyPanels = new HashSet<>();
+    private String visibleCard;
+    private Consumer<String> panelCreatedListener = name -> {};
+    private Consumer<String> filterRefresher; // re-runs the search and filters of Inventory or Gallery
+    private Runnable firstFrameListener;
+
+    private Supplier<List<Book>> allBooks = List::of;
+    private Supplier<List<Book>> booksOnLoan = List::of;
+    private Supplier<Map<String, Integer>> bookStats = Map::of;
+    private Supplier<LoanSummary> loanSummary = () -> LoanSummary.NONE;
     
     private JLabel welcomeLabel;
     private JLabel userProfilePicLabel;
@@ -65,22 +86,18 @@ public class MainView extends JFrame {
         mainContent.add(welcomeLabel, BorderLayout.NORTH);
         
         cardLayout = new CardLayout();
-        contentPanel = new JPanel(cardLayout);
+        contentPanel = new JPanel(cardLayout) {
+            @Override
+            public void paint(Graphics g) {
+                super.paint(g);
+                if (firstFrameListener != null) {
+                    // Runs once this paint has finished and the frame can take input.
+                    SwingUtilities.invokeLater(firstFrameListener);
+                    firstFrameListener = null;
+                }
+            }
+        };
         contentPanel.setOpaque(false);
-
-        userPanel = new UserPanel();
-        inventoryPanel = new InventoryPanel();
-        galleryPanel = new GalleryPanel();
-        lendingPanel = new LendingPanel();
-        addBookPanel = new AddBookPanel();
-        reportingPanel = new ReportingPanel();
-
-        contentPanel.add(userPanel, "Dashboard");
-        contentPanel.add(inventoryPanel, "Inventory");
-        contentPanel.add(galleryPanel, "Gallery");
-        contentPanel.add(lendingPanel, "Lending");
-        contentPanel.add(addBookPanel, "Add Book");
-        contentPanel.add(reportingPanel, "Reporting");
         
         mainContent.add(contentPanel, BorderLayout.CENTER);
         contentPane.add(mainContent, BorderLayout.CENTER);
@@ -168,7 +185,7 @@ public class MainView extends JFrame {
         
         button.addActionListener(e -> {
             if (!text.equals("Settings")) {
-                cardLayout.show(contentPanel, e.getActionCommand());
+                showCard(e.getActionCommand());
                 setSelectedButton((JButton) e.getSource());
             }
         });
@@ -206,7 +223,7 @@ public class MainView extends JFrame {
     }
 
     public void loadProfilePicture() {
-        ImageIcon icon = ImageUtils.loadProfilePicture(currentUsername, 80);
+        ImageIcon icon = ImageUtils.loadProfilePicture(currentUsername, ImageUtils.AVATAR_SIZE);
         userProfilePicLabel.setIcon(icon);
     }
     
@@ -218,16 +235,104 @@ public class MainView extends JFrame {
     }
     
     public void showView() {
+        if (visibleCard == null) showCard("Dashboard");
         setVisible(true);
     }
+
+    /**
+     * Called with the card name ("Inventory", "Gallery", ...) each time a panel is
+     * built, so listeners can be attached before the panel is first shown.
+     * @param listener Receives the card name of the new panel.
+     */
+    public void setPanelCreatedListener(Consumer<String> listener) {
+        this.panelCreatedListener = listener;
+    }
+
+    /**
+     * Called with "Inventory" or "Gallery" when that panel must show fresh data, so
+     * its search and filters can be applied again. Without one, it shows every book.
+     * @param refresher Receives the card name of the panel to refresh.
+     */
+    public void setFilterRefresher(Consumer<String> refresher) {
+        this.filterRefresher = refresher;
+    }
+
+    /**
+     * Runs the given action once, after the first frame with content has been painted.
+     * @param listener The action to run on the event dispatch thread.
+     */
+    public void setFirstFrameListener(Runnable listener) {
+        this.firstFrameListener = listener;
+    }
     
-    public void refreshAllViews(List<Book> allBooks, Map<String, Integer> bookStats) {
-        inventoryPanel.refreshBookTable(allBooks);
-        galleryPanel.updateGallery(allBooks);
-        lendingPanel.refreshBookComboBox(allBooks);
-        lendingPanel.refreshLoansTable(allBooks);
-        userPanel.refreshUserTables(allBooks);
-        reportingPanel.updateChart(bookStats);
+    /**
+     * Tells the views where their data comes from. A supplier is only called when a
+     * panel showing that data is refreshed, and only while that panel is visible.
+     * @param allBooks Every book in the library.
+     * @param booksOnLoan The books currently on loan.
+     * @param bookStats The number of books per type.
+     * @param loanSummary The loans due and overdue as of today.
+     */
+    public void setDataSources(Supplier<List<Book>> allBooks, Supplier<List<Book>> booksOnLoan,
+                               Supplier<Map<String, Integer>> bookStats, Supplier<LoanSummary> loanSummary) {
+        this.allBooks = allBooks;
+        this.booksOnLoan = booksOnLoan;
+        this.bookStats = bookStats;
+        this.loanSummary = loanSummary;
+    }
+
+    /**
+     * Signals that the library has changed. Only the visible panel reads fresh data
+     * now; the others are marked dirty and updated when they are next shown.
+     */
+    public void refreshAllViews() {
+        dirtyPanels.addAll(createdPanels.keySet());
+        if (visibleCard != null) refreshIfDirty(visibleCard);
+    }
+
+    private void showCard(String name) {
+        if (!createdPanels.containsKey(name)) {
+            JPanel panel = createPanel(name);
+            createdPanels.put(name, panel);
+            dirtyPanels.add(name);
+            contentPanel.add(panel, name);
+            panelCreatedListener.accept(name);
+        }
+        cardLayout.show(contentPanel, name);
+        visibleCard = name;
+        refreshIfDirty(name);
+    }
+
+    private JPanel createPanel(String name) {
+        return switch (name) {
+            case "Inventory" -> inventoryPanel = new InventoryPanel();
+            case "Gallery" -> galleryPanel = new GalleryPanel();
+            case "Lending" -> lendingPanel = new LendingPanel();
+            case "Add Book" -> addBookPanel = new AddBookPanel();
+            case "Reporting" -> reportingPanel = new ReportingPanel();
+            default -> userPanel = new UserPanel();
+        };
+    }
+
+    private void refreshIfDirty(String name) {
+        if (!dirtyPanels.remove(name)) return;
+        switch (name) {
+            case "Inventory" -> {
+                if (filterRefresher != null) filterRefresher.accept(name);
+                else inventoryPanel.refreshBookTable(allBooks.get());
+            }
+            case "Gallery" -> {
+                if (filterRefresher != null) filterRefresher.accept(name);
+                else galleryPanel.updateGallery(allBooks.get());
+            }
+            case "Lending" -> {
+                lendingPanel.refreshBookComboBox(allBooks.get());
+                lendingPanel.refreshLoansTable(booksOnLoan.get());
+            }
+            case "Reporting" -> reportingPanel.updateChart(bookStats.get());
+            case "Dashboard" -> userPanel.refreshUserTables(loanSummary.get());
+            default -> { } // Add Book shows no catalog data
+        }
     }
     
     public String getCurrentUsername() { return currentUsername; }
@@ -239,6 +344,7 @@ public class MainView extends JFrame {
     public JButton getAddBookButton() { return addBookButton; }
     public JButton getReportingButton() { return reportingButton; }
     
+    // Panels are null until their card has been shown once.
     public InventoryPanel getInventoryPanel() { return inventoryPanel; }
     public GalleryPanel getGalleryPanel() { return galleryPanel; }
     public AddBookPanel getAddBookPanel() { return addBookPanel; }
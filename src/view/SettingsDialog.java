@@ -52,7 +52,7 @@ public class SettingsDialog extends JDialog {
         gbc.insets = new Insets(8, 5, 8, 20);
         avatarPreviewLabel = new JLabel();
         avatarPreviewLabel.setPreferredSize(new Dimension(80, 80));
-        ImageIcon currentAvatar = ImageUtils.loadProfilePicture(currentUsername, 80);
+        ImageIcon currentAvatar = ImageUtils.loadProfilePicture(currentUsername, ImageUtils.AVATAR_SIZE);
         avatarPreviewLabel.setIcon(currentAvatar);
         formPanel.add(avatarPreviewLabel, gbc);
 
@@ -146,8 +146,7 @@ public class SettingsDialog extends JDialog {
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
             newAvatarPath = selectedFile.getAbsolutePath();
-            ImageIcon icon = new ImageIcon(new ImageIcon(newAvatarPath).getImage().getScaledInstance(80, 80, Image.SCALE_SMOOTH));
-            avatarPreviewLabel.setIcon(icon);
+            avatarPreviewLabel.setIcon(ImageUtils.loadAvatarPreview(newAvatarPath, ImageUtils.AVATAR_SIZE));
         }
     }
 
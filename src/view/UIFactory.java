@@ -3,8 +3,8 @@ package view;
 import java.awt.*;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
+import javax.swing.table.TableModel;
 
 /**
  * A utility class for creating styled UI components.
@@ -100,6 +100,33 @@ public class UIFactory {
         return label;
     }
 
+    /**
+     * Creates the hidden "Did you mean ...?" link shown under a search field.
+     * @return A styled JLabel; see {@link #showSuggestion}.
+     */
+    public static JLabel createSuggestionLabel() {
+        JLabel label = new JLabel();
+        label.setFont(FONT_BODY_PLAIN);
+        label.setForeground(COLOR_ACCENT);
+        label.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        label.setVisible(false);
+        return label;
+    }
+
+    /**
+     * Shows or hides a suggestion link. The suggested text is kept in the label's
+     * "suggestion" client property for whoever handles the click.
+     * @param label A label made by {@link #createSuggestionLabel}.
+     * @param suggestion The suggested search, or null to hide the link.
+     */
+    public static void showSuggestion(JLabel label, String suggestion) {
+        label.putClientProperty("suggestion", suggestion);
+        if (suggestion != null) {
+            label.setText("Did you mean \u201C" + suggestion + "\u201D?");
+        }
+        label.setVisible(suggestion != null);
+    }
+
     /**
      * Creates a panel with a card-like appearance.
      * @return A JPanel styled as a card.
@@ -116,7 +143,7 @@ public class UIFactory {
      * @param model The table model to use.
      * @return A styled JTable.
      */
-    public static JTable createTable(DefaultTableModel model) {
+    public static JTable createTable(TableModel model) {
         JTable table = new JTable(model);
         table.setFont(FONT_BODY_PLAIN);
         table.setRowHeight(32);
@@ -1,6 +1,7 @@
 package view;
 
 import model.Book;
+import model.LoanSummary;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -8,7 +9,6 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
-import java.util.List;
 
 /**
  * The final redesigned UserPanel, acting as a modern activity dashboard.
@@ -108,30 +108,26 @@ public class UserPanel extends JPanel {
         return card;
     }
 
-    public void refreshUserTables(List<Book> allBooks) {
+    /**
+     * Shows the open loans, split into those still due and those overdue.
+     * @param loans The loans as of today.
+     */
+    public void refreshUserTables(LoanSummary loans) {
         activeLoansModel.setRowCount(0);
         overdueLoansModel.setRowCount(0);
         
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        int totalLoans = 0;
-        int overdueCount = 0;
-
-        for (Book book : allBooks) {
-            if (book.isOnLoan() && book.getDueDate() != null) {
-                totalLoans++;
-                long daysBetween = ChronoUnit.DAYS.between(java.time.LocalDate.now(), book.getDueDate());
-                
-                if (daysBetween >= 0) {
-                    activeLoansModel.addRow(new Object[]{book.getTitle(), book.getBorrower(), book.getDueDate().format(formatter), daysBetween});
-                } else {
-                    overdueCount++;
-                    overdueLoansModel.addRow(new Object[]{book.getTitle(), book.getBorrower(), book.getDueDate().format(formatter), Math.abs(daysBetween)});
-                }
-            }
+        for (Book book : loans.dueBooks()) {
+            long daysLeft = ChronoUnit.DAYS.between(loans.asOf(), book.getDueDate());
+            activeLoansModel.addRow(new Object[]{book.getTitle(), book.getBorrower(), book.getDueDate().format(formatter), daysLeft});
+        }
+        for (Book book : loans.overdueBooks()) {
+            long daysOverdue = ChronoUnit.DAYS.between(book.getDueDate(), loans.asOf());
+            overdueLoansModel.addRow(new Object[]{book.getTitle(), book.getBorrower(), book.getDueDate().format(formatter), daysOverdue});
         }
         
-        totalLoansValueLabel.setText(String.valueOf(totalLoans));
-        overdueBooksValueLabel.setText(String.valueOf(overdueCount));
+        totalLoansValueLabel.setText(String.valueOf(loans.onLoan()));
+        overdueBooksValueLabel.setText(String.valueOf(loans.overdue()));
     }
     
     private static class OverdueCellRenderer extends DefaultTableCellRenderer {
@@ -0,0 +1,192 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs {@link JdbcBookRepository} against a real embedded database: copying the
+ * catalog from the data file, writing single books and batches, and reading them
+ * back after reopening.
+ *
+ * The tree ships no JDBC driver, so put one on the class path and pass a URL with a
+ * {dir} placeholder; each case gets a fresh database in its own temporary directory.
+ *
+ * Run with: javac -encoding UTF-8 -d <out> $(find src test -name '*.java')
+ *      then: java -cp <out>:lib/h2.jar model.JdbcRepositoryCheck 'jdbc:h2:{dir}/db'
+ *        or: java -cp <out>:lib/sqlite-jdbc.jar model.JdbcRepositoryCheck 'jdbc:sqlite:{dir}/db'
+ * Exits with status 1 at the first failed expectation.
+ */
+public final class JdbcRepositoryCheck {
+
+    private final String urlPattern;
+
+    private JdbcRepositoryCheck(String urlPattern) {
+        this.urlPattern = urlPattern;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1 || !args[0].contains("{dir}")) {
+            System.err.println("Usage: JdbcRepositoryCheck <jdbc url containing {dir}>");
+            System.exit(2);
+        }
+        JdbcRepositoryCheck check = new JdbcRepositoryCheck(args[0]);
+        check.copiesJournalOnlyCatalog();
+        check.copiesSnapshotAndJournal();
+        check.roundTripsWrites();
+        check.retriesFailedCopy();
+        check.retriesInterruptedCopy();
+        check.releasesCopyThreads();
+        System.out.println("JdbcBookRepository passed every check against " + args[0]);
+    }
+
+    /** A catalog that was never compacted lives only in books.dat.journal. */
+    private void copiesJournalOnlyCatalog() throws IOException {
+        Path dir = Files.createTempDirectory("jdbc-check");
+        Path data = dir.resolve("books.dat");
+        writeCatalog(data, books(0, 50), false);
+        expect(!Files.exists(data), "the catalog should be in the journal only");
+        expectSame(open(dir, data).loadAll(), books(0, 50), "journal-only catalog");
+    }
+
+    private void copiesSnapshotAndJournal() throws IOException {
+        Path dir = Files.createTempDirectory("jdbc-check");
+        Path data = dir.resolve("books.dat");
+        writeCatalog(data, books(0, 300), true);
+        FileBookRepository file = new FileBookRepository(data.toString());
+        file.loadAll();
+        file.addAll(books(300, 320));
+        file.close();
+        expectSame(open(dir, data).loadAll(), books(0, 320), "snapshot plus journal");
+    }
+
+    private void roundTripsWrites() throws IOException {
+        Path dir = Files.createTempDirectory("jdbc-check");
+        Path data = dir.resolve("books.dat");
+        writeCatalog(data, books(0, 10), true);
+        JdbcBookRepository repository = open(dir, data);
+        List<Book> expected = repository.loadAll();
+        Book changed = expected.get(3);
+        changed.setTitle("Renamed");
+        changed.setOnLoan(true);
+        changed.setBorrower("Ada");
+        repository.update(changed);
+        repository.remove(expected.remove(5).getIsbn());
+        Book added = new ReferenceBook("ref-1", "Atlas", "Various", 1999, "Maps");
+        repository.add(added);
+        expected.add(added);
+        List<Book> batch = books(10, 15);
+        repository.addAll(batch);
+        expected.addAll(batch);
+        repository.close();
+
+        List<Book> reopened = open(dir, data).loadAll();
+        expectSame(reopened, expected, "writes after reopening");
+        Book loaded = reopened.get(3);
+        expect(loaded.isOnLoan() && "Ada".equals(loaded.getBorrower()), "loan columns should round-trip");
+    }
+
+    /** A data file that can't be read must not leave an empty books table behind. */
+    private void retriesFailedCopy() throws IOException {
+        Path dir = Files.createTempDirectory("jdbc-check");
+        Path data = dir.resolve("books.dat");
+        Files.write(data, new byte[]{'n', 'o', 't', ' ', 'a', ' ', 'c', 'a', 't', 'a', 'l', 'o', 'g'});
+        try {
+            open(dir, data).loadAll();
+            fail("an unreadable data file should fail the copy");
+        } catch (IOException expected) {
+            // reported to the Library, which says so
+        }
+        Files.delete(data);
+        writeCatalog(data, books(0, 20), true);
+        expectSame(open(dir, data).loadAll(), books(0, 20), "copy retried after a failure");
+    }
+
+    /** A copy cut short leaves only the import table, which the next start replaces. */
+    private void retriesInterruptedCopy() throws IOException, SQLException {
+        Path dir = Files.createTempDirectory("jdbc-check");
+        Path data = dir.resolve("books.dat");
+        writeCatalog(data, books(0, 20), true);
+        try (Connection connection = DriverManager.getConnection(url(dir));
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE books_import (isbn VARCHAR(64) NOT NULL PRIMARY KEY, position BIGINT NOT NULL)");
+            statement.executeUpdate("CREATE INDEX books_position ON books_import (position)");
+            statement.executeUpdate("INSERT INTO books_import VALUES ('half', 0)");
+        }
+        expectSame(open(dir, data).loadAll(), books(0, 20), "copy retried after an interruption");
+    }
+
+    private void releasesCopyThreads() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("jdbc-check");
+        Path data = dir.resolve("books.dat");
+        writeCatalog(data, books(0, 5), true);
+        open(dir, data).loadAll();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("library-")) thread.join(5_000);
+            expect(!thread.isAlive() || !thread.getName().startsWith("library-"), thread.getName() + " is still running");
+        }
+    }
+
+    private JdbcBookRepository open(Path dir, Path data) {
+        return new JdbcBookRepository(url(dir), null, null, data);
+    }
+
+    private String url(Path dir) {
+        return urlPattern.replace("{dir}", dir.toString());
+    }
+
+    /**
+     * Writes books through the file repository, as the app would have.
+     * @param snapshot Whether to fold them into books.dat rather than leave them in the journal.
+     */
+    private static void writeCatalog(Path data, List<Book> books, boolean snapshot) throws IOException {
+        FileBookRepository file = new FileBookRepository(data.toString());
+        file.loadAll();
+        if (snapshot) {
+            file.setSnapshotSource(action -> action.accept(books));
+            file.addAll(books);
+            file.compact();
+        } else {
+            file.addAll(books);
+        }
+        file.close();
+    }
+
+    private static List<Book> books(int from, int to) {
+        List<Book> books = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            books.add(i % 2 == 0
+                    ? new FictionBook("978-" + i, "Title " + i, "Author " + i, 1950 + i % 70, "Genre " + i % 7)
+                    : new NonFictionBook("978-" + i, "Title " + i, "Author " + i, 1950 + i % 70, "Subject " + i % 5));
+        }
+        return books;
+    }
+
+    private static void expectSame(List<Book> actual, List<Book> expected, String what) {
+        expect(actual.size() == expected.size(), what + ": " + actual.size() + " books, expected " + expected.size());
+        Comparator<Book> fields = Comparator.comparing(Book::getIsbn).thenComparing(Book::getTitle)
+                .thenComparing(Book::getAuthor).thenComparingInt(Book::getPublicationYear);
+        for (int i = 0; i < expected.size(); i++) {
+            Book a = actual.get(i);
+            Book e = expected.get(i);
+            expect(a.getClass() == e.getClass() && fields.compare(a, e) == 0, what + ": book " + i + " is " + a.getIsbn()
+                    + " \"" + a.getTitle() + "\", expected " + e.getIsbn() + " \"" + e.getTitle() + "\"");
+        }
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) fail(message);
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
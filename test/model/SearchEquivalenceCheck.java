@@ -0,0 +1,129 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link Library#searchBooks} finds exactly what a plain scan finds:
+ * the books whose lower-cased title, author or ISBN contains the lower-cased
+ * keyword, in catalog order.
+ *
+ * Runs random adds, updates and removes against a library, enough of them that the
+ * trigram index is rebuilt several times, and compares every search with the scan.
+ * Text is drawn from characters whose lower case is unusual ("İ" lower-cases to two
+ * characters, "ß" has no single upper case) so index and scan must agree on them.
+ *
+ * Run with: javac -encoding UTF-8 -d <out> $(find src test -name '*.java')
+ *      then: java -cp <out> model.SearchEquivalenceCheck [steps] [seed]
+ * Exits with status 1 at the first mismatch.
+ */
+public final class SearchEquivalenceCheck {
+
+    private static final String ALPHABET = "abcAB É éßİı-  12";
+    private static final int INITIAL_BOOKS = 3000;
+
+    /** Keeps the catalog in memory only. */
+    private static final class MemoryRepository implements BookRepository {
+        private final List<Book> seed;
+
+        MemoryRepository(List<Book> seed) {
+            this.seed = seed;
+        }
+
+        @Override public List<Book> loadAll() { return seed; }
+        @Override public void add(Book book) {}
+        @Override public void update(Book book) {}
+        @Override public void remove(String isbn) {}
+        @Override public void flush() {}
+    }
+
+    private final Random random;
+    private int nextId;
+
+    private SearchEquivalenceCheck(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 40_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 11;
+        int checks = new SearchEquivalenceCheck(seed).run(steps);
+        System.out.println("searchBooks matched the scan on " + checks + " searches.");
+    }
+
+    private int run(int steps) throws IOException {
+        List<Book> seed = new ArrayList<>();
+        for (int i = 0; i < INITIAL_BOOKS; i++) {
+            seed.add(new FictionBook(nextIsbn(), text(12), text(8), 2000, "Fantasy"));
+        }
+        Path ledger = Files.createTempFile("search-check", ".loans");
+        Files.delete(ledger);
+        Library library = new Library(new MemoryRepository(seed), new LoanLedger(ledger));
+        int checks = 0;
+        try {
+            for (int step = 0; step < steps; step++) {
+                List<Book> books = library.getAllBooks();
+                int operation = random.nextInt(10);
+                if (operation < 3) {
+                    library.addBook(new NonFictionBook(nextIsbn(), text(12), text(8), 2000, "History"));
+                } else if (operation < 5 && !books.isEmpty()) {
+                    Book book = books.get(random.nextInt(books.size()));
+                    book.setTitle(text(12));
+                    book.setAuthor(text(8));
+                    library.updateBook(book);
+                } else if (operation < 6 && !books.isEmpty()) {
+                    library.removeBook(books.get(random.nextInt(books.size())).getIsbn());
+                } else {
+                    String keyword = keyword(books);
+                    List<Book> found = library.searchBooks(keyword);
+                    List<Book> expected = scan(library.getAllBooks(), keyword);
+                    if (!found.equals(expected)) {
+                        System.err.println("Mismatch at step " + step + " for \"" + keyword + "\": found "
+                                + found.size() + " books, the scan found " + expected.size());
+                        System.exit(1);
+                    }
+                    checks++;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(ledger);
+        }
+        return checks;
+    }
+
+    /** The search as it was before any index: a case-insensitive contains() on each field. */
+    private static List<Book> scan(List<Book> books, String keyword) {
+        String lowerCaseKeyword = keyword.toLowerCase();
+        List<Book> hits = new ArrayList<>();
+        for (Book book : books) {
+            if (book.getTitle().toLowerCase().contains(lowerCaseKeyword)
+                    || book.getAuthor().toLowerCase().contains(lowerCaseKeyword)
+                    || book.getIsbn().toLowerCase().contains(lowerCaseKeyword)) {
+                hits.add(book);
+            }
+        }
+        return hits;
+    }
+
+    /** A random fragment, or a whole or trimmed title of a book in the catalog. */
+    private String keyword(List<Book> books) {
+        String keyword = random.nextBoolean() || books.isEmpty() ? text(5) : books.get(random.nextInt(books.size())).getTitle();
+        if (random.nextInt(4) == 0 && keyword.length() > 2) keyword = keyword.substring(1, keyword.length() - 1);
+        return keyword;
+    }
+
+    private String nextIsbn() {
+        return "I" + (nextId++) + "#" + text(3);
+    }
+
+    private String text(int maxLength) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return text.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package model;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that a loan ledger writing every change immediately
+ * (persistence.maxStalenessMillis=0) neither hangs nor loses records.
+ *
+ * Lends and returns books, registering new patrons as it goes, until the log has
+ * been compacted several times, then opens the log again and compares the loans
+ * with those still open in memory. Each lend and return waits for its write while
+ * holding the ledger, which is what used to deadlock with compaction.
+ *
+ * Run with: javac -encoding UTF-8 -d <out> $(find src test -name '*.java')
+ *      then: java -cp <out> model.SynchronousLedgerCheck [steps] [seed]
+ * Exits with status 1 if a step takes too long or the reopened ledger differs.
+ */
+public final class SynchronousLedgerCheck {
+
+    private static final long STEP_TIMEOUT_MILLIS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 4;
+        Path path = Files.createTempFile("ledger-check", ".loans");
+        Files.delete(path);
+        try {
+            LoanLedger ledger = new LoanLedger(path, 0);
+            int[] done = {0};
+            Thread worker = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int step = 0; step < steps; step++) {
+                    String isbn = "978-" + random.nextInt(200);
+                    if (ledger.getLoan(isbn) != null && random.nextBoolean()) {
+                        ledger.returnBook(isbn);
+                    } else {
+                        LocalDate today = LocalDate.of(2025, 1, 1).plusDays(step);
+                        ledger.lend(new Loan(isbn, "Patron " + random.nextInt(50), today, today.plusDays(14)));
+                    }
+                    synchronized (done) {
+                        done[0]++;
+                    }
+                }
+            }, "ledger-check");
+            worker.setDaemon(true);
+            worker.start();
+            int seen = -1;
+            while (worker.isAlive()) {
+                worker.join(STEP_TIMEOUT_MILLIS);
+                int now;
+                synchronized (done) {
+                    now = done[0];
+                }
+                if (worker.isAlive() && now == seen) {
+                    System.err.println("Lending hung after " + now + " steps.");
+                    System.exit(1);
+                }
+                seen = now;
+            }
+
+            List<Loan> expected = sorted(ledger.getLoans());
+            List<Loan> reopened = sorted(new LoanLedger(path, 0).getLoans());
+            if (!reopened.equals(expected)) {
+                System.err.println("The reopened ledger has " + reopened.size() + " loans, expected " + expected.size());
+                System.exit(1);
+            }
+            System.out.println(steps + " synchronous lends and returns; " + expected.size()
+                    + " open loans survived reopening (log now " + Files.size(path) + " bytes).");
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static List<Loan> sorted(List<Loan> loans) {
+        loans.sort(Comparator.comparing(Loan::isbn));
+        return loans;
+    }
+}